@@ -25,6 +25,9 @@
 package net.fabricmc.loom;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Supplier;
@@ -53,6 +56,7 @@ import net.fabricmc.loom.configuration.providers.mappings.MappingsProviderImpl;
 import net.fabricmc.loom.configuration.providers.minecraft.MinecraftMappedProvider;
 import net.fabricmc.loom.extension.LoomFiles;
 import net.fabricmc.loom.extension.MixinExtension;
+import net.fabricmc.loom.util.classindex.ClassIndex;
 
 public interface LoomGradleExtension extends LoomGradleExtensionAPI {
 	static LoomGradleExtension get(Project project) {
@@ -71,6 +75,17 @@ public interface LoomGradleExtension extends LoomGradleExtensionAPI {
 
 	ConfigurableFileCollection getUnmappedModCollection();
 
+	/**
+	 * Gets the class metadata index of a jar, shared with every other consumer of the same jar.
+	 */
+	default ClassIndex getClassIndex(Path jar) {
+		try {
+			return ClassIndex.of(jar, getFiles().getClassIndexCache().toPath());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to index classes of " + jar, e);
+		}
+	}
+
 	void setInstallerData(InstallerData data);
 
 	InstallerData getInstallerData();
@@ -48,6 +48,7 @@ import net.fabricmc.loom.extension.LoomFiles;
 import net.fabricmc.loom.extension.LoomGradleExtensionImpl;
 import net.fabricmc.loom.extension.MinecraftGradleExtension;
 import net.fabricmc.loom.task.LoomTasks;
+import net.fabricmc.loom.util.FileHashCache;
 
 public class LoomGradlePlugin implements BootstrappedPlugin {
 	public static boolean refreshDeps;
@@ -85,7 +86,9 @@ public class LoomGradlePlugin implements BootstrappedPlugin {
 		project.apply(ImmutableMap.of("plugin", "idea"));
 
 		// Setup extensions, minecraft wraps loom
-		LoomGradleExtensionAPI extension = project.getExtensions().create(LoomGradleExtensionAPI.class, "loom", LoomGradleExtensionImpl.class, project, LoomFiles.create(project));
+		LoomFiles files = LoomFiles.create(project);
+		FileHashCache.setup(files.getUserCache().toPath().resolve("file-hashes.bin"));
+		LoomGradleExtensionAPI extension = project.getExtensions().create(LoomGradleExtensionAPI.class, "loom", LoomGradleExtensionImpl.class, project, files);
 		project.getExtensions().create(LoomGradleExtensionAPI.class, "minecraft", MinecraftGradleExtension.class, extension);
 		project.getExtensions().create("fabricApi", FabricApiExtension.class, project);
 
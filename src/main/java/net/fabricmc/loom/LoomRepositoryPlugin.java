@@ -74,6 +74,14 @@ public class LoomRepositoryPlugin implements Plugin<PluginAware> {
 			repo.setName("Fabric");
 			repo.setUrl(MirrorUtil.getFabricRepository(target));
 		});
+		repositories.maven(repo -> {
+			repo.setName("MinecraftLibraries");
+			repo.setUrl(files.getLibraryStore());
+			// Only libraries prefetched together with their POM, anything else is resolved from Mojang with its dependencies
+			repo.metadataSources(sources -> {
+				sources.mavenPom();
+			});
+		});
 		repositories.maven(repo -> {
 			repo.setName("Mojang");
 			repo.setUrl(MirrorUtil.getLibrariesBase(target));
@@ -0,0 +1,348 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.build;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.commons.Remapper;
+
+import net.fabricmc.loom.util.CacheStore;
+import net.fabricmc.loom.util.Constants;
+
+/**
+ * Tracks the classes of a remapped jar between runs, so that a following remap only has to remap the classes
+ * that changed since. The remapped classes of the previous run are kept next to the state and copied into the output.
+ *
+ * <p>Only changes that leave the shape of a class (its hierarchy, members and inner classes) untouched are remapped
+ * incrementally, as anything else may change how other classes are remapped. Added or removed classes,
+ * or a different remap key (mappings, classpath, namespaces), also result in a full remap.
+ */
+final class IncrementalRemap {
+	private static final int MAGIC = 0x4C495243; // LIRC
+	private static final int VERSION = 1;
+
+	private final Path stateFile;
+	private final Path classesJar;
+	private final Path changedJar;
+	private final Path unchangedJar;
+	private final String key;
+	private final Map<String, ClassState> current = new HashMap<>();
+	private boolean incremental;
+	private int changedCount;
+
+	IncrementalRemap(Path stateDir, String key) {
+		this.stateFile = stateDir.resolve("remap-state.bin");
+		this.classesJar = stateDir.resolve("remapped-classes.jar");
+		this.changedJar = stateDir.resolve("changed-classes.jar");
+		this.unchangedJar = stateDir.resolve("unchanged-classes.jar");
+		this.key = Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+	}
+
+	/**
+	 * Compares the input against the previous run, and splits it into changed and unchanged classes when possible.
+	 *
+	 * @return true if only the {@linkplain #getChangedClasses() changed classes} have to be remapped
+	 */
+	boolean prepare(Path input) throws IOException {
+		Map<String, ClassState> previous = Files.exists(classesJar) ? readState() : null;
+		Files.createDirectories(stateFile.getParent());
+		boolean unsupported = false;
+
+		try (ZipFile zipFile = new ZipFile(input.toFile())) {
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+
+				if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+					continue;
+				}
+
+				if (entry.getName().startsWith("META-INF/versions/")) {
+					// Multi-release classes are not tracked
+					unsupported = true;
+				}
+
+				ClassState previousState = previous != null ? previous.get(entry.getName()) : null;
+
+				if (previousState != null && previousState.crc() == entry.getCrc()) {
+					current.put(entry.getName(), previousState);
+				} else {
+					current.put(entry.getName(), new ClassState(entry.getCrc(), 0, null));
+				}
+			}
+
+			incremental = !unsupported && previous != null && previous.keySet().equals(current.keySet())
+					&& split(zipFile, previous);
+		}
+
+		if (!incremental) {
+			Files.deleteIfExists(stateFile);
+		}
+
+		return incremental;
+	}
+
+	// Writes the changed and unchanged classes into their own jars, fails if the shape of a changed class is different
+	private boolean split(ZipFile zipFile, Map<String, ClassState> previous) throws IOException {
+		changedCount = 0;
+
+		try (ZipOutputStream changed = createJar(changedJar);
+				ZipOutputStream unchanged = createJar(unchangedJar)) {
+			for (Map.Entry<String, ClassState> entry : current.entrySet()) {
+				byte[] bytes;
+
+				try (InputStream is = zipFile.getInputStream(zipFile.getEntry(entry.getKey()))) {
+					bytes = is.readAllBytes();
+				}
+
+				ClassState previousState = previous.get(entry.getKey());
+				ZipOutputStream target = unchanged;
+
+				if (entry.getValue() != previousState) {
+					if (shapeOf(bytes) != previousState.shape()) {
+						return false;
+					}
+
+					entry.setValue(new ClassState(entry.getValue().crc(), previousState.shape(), null));
+					target = changed;
+					changedCount++;
+				}
+
+				target.putNextEntry(new ZipEntry(entry.getKey()));
+				target.write(bytes);
+				target.closeEntry();
+			}
+		}
+
+		return true;
+	}
+
+	Path getChangedClasses() {
+		return changedJar;
+	}
+
+	Path getUnchangedClasses() {
+		return unchangedJar;
+	}
+
+	boolean isIncremental() {
+		return incremental;
+	}
+
+	int getChangedCount() {
+		return changedCount;
+	}
+
+	/**
+	 * Passes the previously remapped classes that did not change to the output.
+	 */
+	void writeUnchangedClasses(BiConsumer<String, byte[]> output) throws IOException {
+		try (ZipFile zipFile = new ZipFile(classesJar.toFile())) {
+			for (ClassState state : current.values()) {
+				if (state.outputName() == null) {
+					continue;
+				}
+
+				ZipEntry entry = zipFile.getEntry(state.outputName() + ".class");
+
+				if (entry == null) {
+					throw new IOException("Missing previously remapped class " + state.outputName());
+				}
+
+				try (InputStream is = zipFile.getInputStream(entry)) {
+					output.accept(state.outputName(), is.readAllBytes());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records the remapped names of all input classes, must be called before the remapper is done.
+	 */
+	void mapNames(Remapper remapper) {
+		current.replaceAll((name, state) -> new ClassState(state.crc(), state.shape(), remapper.map(name.substring(0, name.length() - ".class".length()))));
+	}
+
+	/**
+	 * Saves the state of this run, with the remapped classes taken from the output.
+	 */
+	void save(Path input, Path output) throws IOException {
+		CacheStore.publish(classesJar, tempClasses -> {
+			try (ZipFile inputZip = new ZipFile(input.toFile());
+					ZipFile outputZip = new ZipFile(output.toFile());
+					ZipOutputStream classes = createJar(tempClasses)) {
+				for (Map.Entry<String, ClassState> entry : current.entrySet()) {
+					ClassState state = entry.getValue();
+
+					if (!incremental) {
+						try (InputStream is = inputZip.getInputStream(inputZip.getEntry(entry.getKey()))) {
+							state = new ClassState(state.crc(), shapeOf(is.readAllBytes()), state.outputName());
+						}
+
+						entry.setValue(state);
+					}
+
+					ZipEntry outputEntry = outputZip.getEntry(state.outputName() + ".class");
+
+					if (outputEntry == null) {
+						throw new IOException("Missing remapped class " + state.outputName() + " in " + output);
+					}
+
+					classes.putNextEntry(new ZipEntry(outputEntry.getName()));
+
+					try (InputStream is = outputZip.getInputStream(outputEntry)) {
+						is.transferTo(classes);
+					}
+
+					classes.closeEntry();
+				}
+			}
+		});
+		writeState();
+		Files.deleteIfExists(changedJar);
+		Files.deleteIfExists(unchangedJar);
+	}
+
+	void invalidate() throws IOException {
+		Files.deleteIfExists(stateFile);
+	}
+
+	@Nullable
+	private Map<String, ClassState> readState() {
+		if (!Files.exists(stateFile)) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)) {
+				return null;
+			}
+
+			int count = in.readInt();
+			Map<String, ClassState> state = new HashMap<>(count);
+
+			for (int i = 0; i < count; i++) {
+				state.put(in.readUTF(), new ClassState(in.readLong(), in.readLong(), in.readUTF()));
+			}
+
+			return state;
+		} catch (IOException e) {
+			// Broken state, do a full remap
+			return null;
+		}
+	}
+
+	private void writeState() throws IOException {
+		CacheStore.publish(stateFile, tempFile -> {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(key);
+				out.writeInt(current.size());
+
+				for (Map.Entry<String, ClassState> entry : current.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeLong(entry.getValue().crc());
+					out.writeLong(entry.getValue().shape());
+					out.writeUTF(entry.getValue().outputName());
+				}
+			}
+		});
+	}
+
+	private static ZipOutputStream createJar(Path path) throws IOException {
+		ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+		// Only read back locally, speed matters more than size
+		zos.setLevel(Deflater.BEST_SPEED);
+		return zos;
+	}
+
+	// Hashes everything about a class that can affect how other classes are remapped
+	private static long shapeOf(byte[] bytes) {
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+
+		new ClassReader(bytes).accept(new ClassVisitor(Constants.ASM_VERSION) {
+			@Override
+			public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+				hasher.putInt(access).putUnencodedChars(name).putUnencodedChars(String.valueOf(superName));
+
+				for (String itf : interfaces) {
+					hasher.putUnencodedChars(itf);
+				}
+			}
+
+			@Override
+			public void visitOuterClass(String owner, String name, String descriptor) {
+				hasher.putUnencodedChars(owner).putUnencodedChars(String.valueOf(name)).putUnencodedChars(String.valueOf(descriptor));
+			}
+
+			@Override
+			public void visitInnerClass(String name, String outerName, String innerName, int access) {
+				hasher.putUnencodedChars(name).putUnencodedChars(String.valueOf(outerName)).putUnencodedChars(String.valueOf(innerName)).putInt(access);
+			}
+
+			@Override
+			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+				hasher.putChar('F').putInt(access).putUnencodedChars(name).putUnencodedChars(descriptor);
+				return null;
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				hasher.putChar('M').putInt(access).putUnencodedChars(name).putUnencodedChars(descriptor);
+				return null;
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+		return hasher.hash().asLong();
+	}
+
+	private record ClassState(long crc, long shape, @Nullable String outputName) {
+	}
+}
@@ -31,9 +31,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import dev.architectury.tinyremapper.IMappingProvider;
 import dev.architectury.tinyremapper.InputTag;
@@ -41,6 +43,8 @@ import dev.architectury.tinyremapper.OutputConsumerPath;
 import dev.architectury.tinyremapper.TinyRemapper;
 import org.gradle.api.Action;
 import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 import org.objectweb.asm.commons.Remapper;
 
 import net.fabricmc.loom.util.CloseableList;
@@ -48,6 +52,10 @@ import net.fabricmc.loom.util.LoggerFilter;
 import net.fabricmc.stitch.util.Pair;
 
 public class JarRemapper {
+	// Set to false to always read the remap classpath from scratch
+	private static final String WARM_REMAPPER_PROPERTY = "loom.remapJar.warmClasspath";
+	private static final Logger WARM_REMAPPER_LOGGER = Logging.getLogger(JarRemapper.class);
+
 	private final List<IMappingProvider> mappingProviders = new ArrayList<>();
 	private final Set<Path> classPath = new HashSet<>();
 	private final List<RemapData> remapData = new ArrayList<>();
@@ -69,18 +77,6 @@ public class JarRemapper {
 
 	public void remap(Project project) throws IOException {
 		LoggerFilter.replaceSystemOut();
-		TinyRemapper.Builder remapperBuilder = TinyRemapper.newRemapper();
-		remapperBuilder.logger(project.getLogger()::lifecycle);
-		remapperBuilder.logUnknownInvokeDynamic(false);
-		mappingProviders.forEach(remapperBuilder::withMappings);
-
-		if (remapOptions != null) {
-			for (Action<TinyRemapper.Builder> remapOption : remapOptions) {
-				remapOption.execute(remapperBuilder);
-			}
-		}
-
-		TinyRemapper remapper = remapperBuilder.build();
 
 		Path[] remapClasspath = classPath.stream()
 				.filter(path ->
@@ -88,22 +84,50 @@ public class JarRemapper {
 				)
 				.toArray(Path[]::new);
 
-		remapper.readClassPathAsync(remapClasspath);
+		boolean warm = canUseWarmRemapper(project);
+		// Stats every classpath entry, so it is computed once and only when needed
+		WarmRemapperCache.Key classPathKey = warm || remapData.stream().anyMatch(data -> data.incrementalStateDir != null) ? WarmRemapperCache.key(Arrays.asList(remapClasspath)) : null;
+		TinyRemapper remapper;
 
-		for (RemapData data : remapData) {
-			InputTag tag = remapper.createInputTag();
-			data.tag = tag;
-			project.getLogger().info(":remapper input -> " + data.input.getFileName().toString());
-
-			try {
-				remapper.readInputsAsync(tag, data.input);
-			} catch (Exception e) {
-				throw new RuntimeException("Failed to read remapper input " + data.input.getFileName().toString(), e);
-			}
+		if (warm) {
+			// The remapper outlives this build, so it must not hold on to the project
+			remapper = WarmRemapperCache.acquire(classPathKey, () -> createRemapper(WARM_REMAPPER_LOGGER::lifecycle).build());
+		} else {
+			TinyRemapper.Builder remapperBuilder = createRemapper(project.getLogger()::lifecycle);
+			mappingProviders.forEach(remapperBuilder::withMappings);
+			remapper = remapperBuilder.build();
+			remapper.readClassPathAsync(remapClasspath);
 		}
 
 		//noinspection MismatchedQueryAndUpdateOfCollection
 		try (CloseableList<OutputConsumerPath> outputConsumers = new CloseableList<>()) {
+			if (warm) {
+				remapper.replaceMappings(new HashSet<>(mappingProviders));
+			}
+
+			for (RemapData data : remapData) {
+				InputTag tag = remapper.createInputTag();
+				data.tag = tag;
+				project.getLogger().info(":remapper input -> " + data.input.getFileName().toString());
+
+				try {
+					if (data.incrementalStateDir != null) {
+						data.incremental = new IncrementalRemap(data.incrementalStateDir, data.incrementalKey + classPathKey);
+					}
+
+					if (data.incremental != null && data.incremental.prepare(data.input)) {
+						project.getLogger().info(":remapping {} changed classes of {}", data.incremental.getChangedCount(), data.input.getFileName());
+						remapper.readInputsAsync(tag, data.incremental.getChangedClasses());
+						// Read for the class hierarchy only, the previously remapped classes are used instead
+						remapper.readInputsAsync(remapper.createInputTag(), data.incremental.getUnchangedClasses());
+					} else {
+						remapper.readInputsAsync(tag, data.input);
+					}
+				} catch (Exception e) {
+					throw new RuntimeException("Failed to read remapper input " + data.input.getFileName().toString(), e);
+				}
+			}
+
 			for (RemapData data : remapData) {
 				OutputConsumerPath outputConsumer;
 				project.getLogger().info(":remapper output -> " + data.output.getFileName().toString());
@@ -121,21 +145,78 @@ public class JarRemapper {
 
 				data.processAccessWidener(remapper.getRemapper());
 				remapper.apply(outputConsumer, data.tag);
+
+				if (data.incremental != null) {
+					if (data.incremental.isIncremental()) {
+						data.incremental.writeUnchangedClasses(outputConsumer);
+					}
+
+					data.incremental.mapNames(remapper.getRemapper());
+				}
 			}
 
-			remapper.finish();
+			if (warm) {
+				remapper.removeInput();
+			} else {
+				remapper.finish();
+			}
 		} catch (Exception e) {
+			// The state of a warm remapper is unknown, it is not handed back
+			remapper.finish();
+
 			for (RemapData data : remapData) {
 				// Cleanup bad outputs
 				Files.deleteIfExists(data.output);
+
+				if (data.incremental != null) {
+					data.incremental.invalidate();
+				}
 			}
 
 			throw new IOException("Failed to remap %s files".formatted(remapData.size()), e);
 		}
 
+		if (warm) {
+			WarmRemapperCache.release(classPathKey, remapper);
+		}
+
+		for (RemapData data : remapData) {
+			if (data.incremental != null) {
+				try {
+					data.incremental.save(data.input, data.output);
+				} catch (IOException e) {
+					project.getLogger().warn("Failed to save incremental remap state of " + data.input.getFileName(), e);
+					data.incremental.invalidate();
+				}
+			}
+		}
+
 		remapData.forEach(RemapData::complete);
 	}
 
+	private TinyRemapper.Builder createRemapper(Consumer<String> logger) {
+		TinyRemapper.Builder remapperBuilder = TinyRemapper.newRemapper();
+		remapperBuilder.logger(logger);
+		remapperBuilder.logUnknownInvokeDynamic(false);
+
+		if (remapOptions != null) {
+			for (Action<TinyRemapper.Builder> remapOption : remapOptions) {
+				remapOption.execute(remapperBuilder);
+			}
+		}
+
+		return remapperBuilder;
+	}
+
+	// Remap options may configure remapper extensions that keep state between inputs, these always get a fresh remapper
+	private boolean canUseWarmRemapper(Project project) {
+		if (remapOptions != null && !remapOptions.isEmpty()) {
+			return false;
+		}
+
+		return !"false".equals(Objects.toString(project.findProperty(WARM_REMAPPER_PROPERTY), null));
+	}
+
 	public void addOptions(List<Action<TinyRemapper.Builder>> remapOptions) {
 		this.remapOptions = remapOptions;
 	}
@@ -146,7 +227,10 @@ public class JarRemapper {
 		BiFunction<RemapData, Remapper, Pair<String, byte[]>> accesWidenerSupplier;
 		BiConsumer<RemapData, Pair<String, byte[]>> onComplete;
 
+		private Path incrementalStateDir;
+		private String incrementalKey;
 		private InputTag tag;
+		private IncrementalRemap incremental;
 		private Pair<String, byte[]> accessWidener;
 
 		public RemapData(Path input, Path output) {
@@ -159,6 +243,19 @@ public class JarRemapper {
 			return this;
 		}
 
+		/**
+		 * Only remaps the classes that changed since the last remap with the same state directory and key,
+		 * when their changes cannot affect how other classes are remapped.
+		 *
+		 * @param stateDir the directory to keep the state between remaps in
+		 * @param key identifies everything besides the input and the classpath that affects the remapped output
+		 */
+		public RemapData incremental(Path stateDir, String key) {
+			this.incrementalStateDir = stateDir;
+			this.incrementalKey = key;
+			return this;
+		}
+
 		public RemapData supplyAccessWidener(BiFunction<RemapData, Remapper, Pair<String, byte[]>> beforeFinish) {
 			this.accesWidenerSupplier = beforeFinish;
 			return this;
@@ -53,10 +53,12 @@ import org.jetbrains.annotations.Nullable;
 
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.LoomGradlePlugin;
+import net.fabricmc.loom.api.mappings.layered.MappingsNamespace;
 import net.fabricmc.loom.configuration.RemappedConfigurationEntry;
 import net.fabricmc.loom.configuration.mods.ModProcessor;
 import net.fabricmc.loom.configuration.processors.dependency.ModDependencyInfo;
 import net.fabricmc.loom.configuration.processors.dependency.RemapData;
+import net.fabricmc.loom.configuration.providers.mappings.MappingsProviderImpl;
 import net.fabricmc.loom.util.Checksum;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.OperatingSystem;
@@ -78,7 +80,10 @@ public class ModCompileRemapper {
 		boolean refreshDeps = LoomGradlePlugin.refreshDeps;
 
 		final File modStore = extension.getFiles().getRemappedModCache();
-		final RemapData remapData = new RemapData(mappingsSuffix, modStore);
+		final MappingsProviderImpl mappingsProvider = extension.getMappingsProvider();
+		final File mappings = (extension.isForge() ? mappingsProvider.tinyMappingsWithSrg : mappingsProvider.tinyMappings).toFile();
+		final String namespaces = (extension.isForge() ? MappingsNamespace.SRG : MappingsNamespace.INTERMEDIARY) + "->" + MappingsNamespace.NAMED;
+		final RemapData remapData = new RemapData(mappingsSuffix, modStore, Checksum.truncatedSha256(mappings), namespaces);
 
 		for (RemappedConfigurationEntry entry : Constants.MOD_COMPILE_ENTRIES) {
 			extension.getLazyConfigurationProvider(entry.getRemappedConfiguration()).configure(remappedConfig -> {
@@ -0,0 +1,168 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.build;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import dev.architectury.tinyremapper.TinyRemapper;
+
+/**
+ * Keeps tiny remappers with their classpath already read alive in the daemon, so that repeated
+ * remaps against the same classpath only have to read the (usually small) inputs.
+ *
+ * <p>A remapper is checked out for exclusive use with {@link #acquire} and handed back with {@link #release}
+ * once its inputs have been removed. Any change to a classpath entry results in a different key. At most
+ * {@value #MAX_IDLE} remappers are kept, and remappers that stayed idle for {@value #IDLE_TIMEOUT_MINUTES}
+ * minutes are finished, so a daemon that stopped remapping doesn't keep their classpaths in memory.
+ */
+final class WarmRemapperCache {
+	private static final int MAX_IDLE = 2;
+	private static final long IDLE_TIMEOUT_MINUTES = 10;
+	private static final Map<Key, IdleRemapper> IDLE = new LinkedHashMap<>();
+	private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Loom warm remapper eviction");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private WarmRemapperCache() {
+	}
+
+	static Key key(Collection<Path> classPath) {
+		List<ClassPathEntry> entries = new ArrayList<>(classPath.size());
+
+		for (Path path : classPath) {
+			try {
+				entries.add(new ClassPathEntry(path.toAbsolutePath().toString(), Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to read attributes of " + path, e);
+			}
+		}
+
+		entries.sort(Comparator.comparing(ClassPathEntry::path));
+		return new Key(List.copyOf(entries));
+	}
+
+	/**
+	 * Returns an idle remapper for the key, or creates one and reads the classpath into it.
+	 */
+	static TinyRemapper acquire(Key key, Supplier<TinyRemapper> factory) {
+		synchronized (IDLE) {
+			IdleRemapper idle = IDLE.remove(key);
+
+			if (idle != null) {
+				return idle.remapper();
+			}
+		}
+
+		TinyRemapper remapper = factory.get();
+		remapper.readClassPathAsync(key.entries().stream().map(entry -> Path.of(entry.path())).toArray(Path[]::new));
+		return remapper;
+	}
+
+	/**
+	 * Hands a remapper back once its inputs have been removed, evicting the least recently used ones.
+	 */
+	static void release(Key key, TinyRemapper remapper) {
+		List<TinyRemapper> evicted = new ArrayList<>();
+
+		synchronized (IDLE) {
+			IdleRemapper previous = IDLE.put(key, new IdleRemapper(remapper, System.nanoTime()));
+
+			if (previous != null) {
+				evicted.add(previous.remapper());
+			}
+
+			Iterator<IdleRemapper> iterator = IDLE.values().iterator();
+
+			while (IDLE.size() > MAX_IDLE && iterator.hasNext()) {
+				evicted.add(iterator.next().remapper());
+				iterator.remove();
+			}
+		}
+
+		evicted.forEach(TinyRemapper::finish);
+		EVICTOR.schedule(WarmRemapperCache::evictExpired, IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+	}
+
+	private static void evictExpired() {
+		List<TinyRemapper> evicted = new ArrayList<>();
+		long now = System.nanoTime();
+
+		synchronized (IDLE) {
+			Iterator<IdleRemapper> iterator = IDLE.values().iterator();
+
+			while (iterator.hasNext()) {
+				IdleRemapper idle = iterator.next();
+
+				if (now - idle.releasedAt() >= TimeUnit.MINUTES.toNanos(IDLE_TIMEOUT_MINUTES)) {
+					evicted.add(idle.remapper());
+					iterator.remove();
+				}
+			}
+		}
+
+		evicted.forEach(TinyRemapper::finish);
+	}
+
+	record Key(List<ClassPathEntry> entries) {
+		/**
+		 * A hash of every classpath entry, for use in persisted keys.
+		 */
+		@Override
+		public String toString() {
+			Hasher hasher = Hashing.sha256().newHasher();
+
+			for (ClassPathEntry entry : entries) {
+				hasher.putString(entry.path(), StandardCharsets.UTF_8).putLong(entry.size()).putLong(entry.lastModified());
+			}
+
+			return hasher.hash().toString();
+		}
+	}
+
+	private record IdleRemapper(TinyRemapper remapper, long releasedAt) {
+	}
+
+	record ClassPathEntry(String path, long size, long lastModified) {
+	}
+}
@@ -24,25 +24,43 @@
 
 package net.fabricmc.loom.build.nesting;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import com.google.common.base.Preconditions;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import org.gradle.api.UncheckedIOException;
 import org.gradle.api.logging.Logger;
 
+import net.fabricmc.loom.LoomGradlePlugin;
+import net.fabricmc.loom.util.CacheStore;
 import net.fabricmc.loom.util.ModUtils;
-import net.fabricmc.loom.util.Pair;
-import net.fabricmc.loom.util.ZipUtils;
 
 public class JarNester {
+	private static final String MOD_JSON = "fabric.mod.json";
+
+	/**
+	 * Nests jars into a mod jar, rewriting it in a single pass.
+	 *
+	 * <p>The nested jars are streamed into the output and stored, as they are compressed already.
+	 */
 	public static void nestJars(Collection<File> jars, File modJar, Logger logger) {
 		if (jars.isEmpty()) {
 			logger.debug("Nothing to nest into " + modJar.getName());
@@ -51,48 +69,114 @@ public class JarNester {
 
 		Preconditions.checkArgument(ModUtils.isMod(modJar), "Cannot nest jars into none mod jar " + modJar.getName());
 
-		try {
-			ZipUtils.add(modJar.toPath(), jars.stream().map(file -> {
-				try {
-					return new Pair<>("META-INF/jars/" + file.getName(), Files.readAllBytes(file.toPath()));
-				} catch (IOException e) {
-					throw new UncheckedIOException(e);
-				}
-			}).collect(Collectors.toList()));
+		Map<String, File> nestedJars = new LinkedHashMap<>();
 
-			int count = ZipUtils.transformJson(JsonObject.class, modJar.toPath(), Stream.of(new Pair<>("fabric.mod.json", json -> {
-				JsonArray nestedJars = json.getAsJsonArray("jars");
+		for (File file : jars) {
+			String nestedJarPath = "META-INF/jars/" + file.getName();
 
-				if (nestedJars == null || !json.has("jars")) {
-					nestedJars = new JsonArray();
-				}
+			if (nestedJars.putIfAbsent(nestedJarPath, file) != null) {
+				throw new IllegalStateException("Cannot nest 2 jars at the same path: " + nestedJarPath);
+			}
+		}
+
+		try {
+			CacheStore.publish(modJar.toPath(), temp -> {
+				try (ZipFile input = new ZipFile(modJar);
+						ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+					ZipEntry modJsonEntry = input.getEntry(MOD_JSON);
+					Preconditions.checkState(modJsonEntry != null, "Failed to transform fabric.mod.json");
+					JsonObject modJson;
+
+					try (InputStream is = input.getInputStream(modJsonEntry)) {
+						modJson = LoomGradlePlugin.GSON.fromJson(new InputStreamReader(is, StandardCharsets.UTF_8), JsonObject.class);
+					}
+
+					addNestedJars(modJson, nestedJars.keySet(), modJar.getName(), logger);
+					Enumeration<? extends ZipEntry> entries = input.entries();
 
-				for (File file : jars) {
-					String nestedJarPath = "META-INF/jars/" + file.getName();
+					while (entries.hasMoreElements()) {
+						ZipEntry entry = entries.nextElement();
 
-					for (JsonElement nestedJar : nestedJars) {
-						JsonObject jsonObject = nestedJar.getAsJsonObject();
+						if (nestedJars.containsKey(entry.getName())) {
+							// Replaced by the jar being nested
+							continue;
+						}
 
-						if (jsonObject.has("file") && jsonObject.get("file").getAsString().equals(nestedJarPath)) {
-							throw new IllegalStateException("Cannot nest 2 jars at the same path: " + nestedJarPath);
+						if (entry.getName().equals(MOD_JSON)) {
+							ZipEntry newEntry = new ZipEntry(MOD_JSON);
+							newEntry.setTime(entry.getTime());
+							output.putNextEntry(newEntry);
+							output.write(LoomGradlePlugin.GSON.toJson(modJson).getBytes(StandardCharsets.UTF_8));
+						} else {
+							ZipEntry newEntry = new ZipEntry(entry);
+							newEntry.setCompressedSize(-1);
+							output.putNextEntry(newEntry);
+
+							try (InputStream is = input.getInputStream(entry)) {
+								is.transferTo(output);
+							}
 						}
+
+						output.closeEntry();
 					}
 
-					JsonObject jsonObject = new JsonObject();
-					jsonObject.addProperty("file", nestedJarPath);
-					nestedJars.add(jsonObject);
+					for (Map.Entry<String, File> nestedJar : nestedJars.entrySet()) {
+						writeStored(output, nestedJar.getKey(), nestedJar.getValue().toPath(), modJsonEntry.getTime());
+					}
+				}
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to nest jars into " + modJar.getName(), e);
+		}
+	}
 
-					logger.debug("Nested " + nestedJarPath + " into " + modJar.getName());
+	private static void addNestedJars(JsonObject json, Collection<String> nestedJarPaths, String modJarName, Logger logger) {
+		JsonArray nestedJars = json.getAsJsonArray("jars");
+
+		if (nestedJars == null || !json.has("jars")) {
+			nestedJars = new JsonArray();
+		}
+
+		for (String nestedJarPath : nestedJarPaths) {
+			for (JsonElement nestedJar : nestedJars) {
+				JsonObject jsonObject = nestedJar.getAsJsonObject();
+
+				if (jsonObject.has("file") && jsonObject.get("file").getAsString().equals(nestedJarPath)) {
+					throw new IllegalStateException("Cannot nest 2 jars at the same path: " + nestedJarPath);
 				}
+			}
 
-				json.add("jars", nestedJars);
+			JsonObject jsonObject = new JsonObject();
+			jsonObject.addProperty("file", nestedJarPath);
+			nestedJars.add(jsonObject);
 
-				return json;
-			})));
+			logger.debug("Nested " + nestedJarPath + " into " + modJarName);
+		}
 
-			Preconditions.checkState(count > 0, "Failed to transform fabric.mod.json");
-		} catch (IOException e) {
-			throw new java.io.UncheckedIOException("Failed to nest jars into " + modJar.getName(), e);
+		json.add("jars", nestedJars);
+	}
+
+	// Stored entries need their size and crc upfront, the jar is read twice instead of being buffered in memory
+	private static void writeStored(ZipOutputStream output, String name, Path file, long time) throws IOException {
+		CRC32 crc = new CRC32();
+
+		try (InputStream is = Files.newInputStream(file)) {
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+
+			while ((read = is.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+			}
 		}
+
+		ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(Files.size(file));
+		entry.setCompressedSize(Files.size(file));
+		entry.setCrc(crc.getValue());
+		entry.setTime(time);
+		output.putNextEntry(entry);
+		Files.copy(file, (OutputStream) output);
+		output.closeEntry();
 	}
 }
@@ -47,6 +47,7 @@ import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.Dependency;
 import org.gradle.api.artifacts.ResolvedDependency;
 import org.gradle.api.artifacts.SelfResolvingDependency;
+import org.jetbrains.annotations.Nullable;
 
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.LoomGradlePlugin;
@@ -58,6 +59,7 @@ public abstract class DependencyProvider {
 	private LoomDependencyManager dependencyManager;
 	private final Project project;
 	private final LoomGradleExtension extension;
+	private Boolean refreshDeps;
 
 	public DependencyProvider(Project project) {
 		this.project = project;
@@ -101,9 +103,38 @@ public abstract class DependencyProvider {
 	}
 
 	public boolean isRefreshDeps() {
+		if (refreshDeps != null) {
+			return refreshDeps;
+		}
+
+		String refreshKey = getRefreshKey();
+
+		if (!LoomGradlePlugin.refreshDeps || refreshKey == null) {
+			return LoomGradlePlugin.refreshDeps;
+		}
+
+		refreshDeps = SharedSetupService.get(project).claimRefresh(getClass().getName() + ":" + refreshKey);
+		return refreshDeps;
+	}
+
+	/**
+	 * Whether {@code --refresh-dependencies} was passed, for outputs that belong to this project only. Unlike
+	 * {@link #isRefreshDeps()} this is never claimed by another project of the build.
+	 */
+	public boolean isRefreshProjectDeps() {
 		return LoomGradlePlugin.refreshDeps;
 	}
 
+	/**
+	 * Identifies the outputs this provider writes to the shared caches, so that with {@code --refresh-dependencies} only
+	 * the first project of the build refreshes them. Returns null when the outputs cannot be shared between projects,
+	 * or are not known yet, in which case every project refreshes.
+	 */
+	@Nullable
+	protected String getRefreshKey() {
+		return null;
+	}
+
 	public static class DependencyInfo {
 		final Project project;
 		final Dependency dependency;
@@ -0,0 +1,88 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2018-2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.configuration;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gradle.api.Project;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Build scoped state shared by every project applying Loom, used to do the Minecraft setup work that writes to the
+ * global caches once per build instead of once per project.
+ *
+ * <p>The Minecraft downloads, the merge and the library prefetching run once per build. Mappings, Forge patching and
+ * the mapped jars are not run through this service, as each project has to read them into its own state; later
+ * projects skip rebuilding them through their up-to-date checks, and the {@link net.fabricmc.loom.util.CacheStore}
+ * locks keep builds from writing them concurrently.
+ */
+public abstract class SharedSetupService implements BuildService<BuildServiceParameters.None> {
+	// Projects that load Loom from separate class loaders cannot share instances, so each class loader gets its own service
+	private static final String NAME = "loomSharedSetup" + Integer.toHexString(System.identityHashCode(SharedSetupService.class.getClassLoader()));
+
+	private final Map<String, Object> locks = new ConcurrentHashMap<>();
+	private final Set<String> completed = ConcurrentHashMap.newKeySet();
+	private final Set<String> refreshed = ConcurrentHashMap.newKeySet();
+
+	public static SharedSetupService get(Project project) {
+		return project.getGradle().getSharedServices().registerIfAbsent(NAME, SharedSetupService.class, spec -> { }).get();
+	}
+
+	/**
+	 * Runs the work unless a project of this build already completed work with the same key. Projects asking for the
+	 * same key at the same time wait for the first one, failed work is retried by the next project.
+	 *
+	 * @return true if the work was run by this call
+	 */
+	public boolean runOnce(String key, SetupWork work) throws IOException {
+		synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+			if (completed.contains(key)) {
+				return false;
+			}
+
+			work.run();
+			completed.add(key);
+			return true;
+		}
+	}
+
+	/**
+	 * Claims the refresh of the outputs with the given key, with {@code --refresh-dependencies} only the first project
+	 * refreshes shared outputs and the others reuse them.
+	 *
+	 * @return true if this is the first claim of the key in this build
+	 */
+	public boolean claimRefresh(String key) {
+		return refreshed.add(key);
+	}
+
+	public interface SetupWork {
+		void run() throws IOException;
+	}
+}
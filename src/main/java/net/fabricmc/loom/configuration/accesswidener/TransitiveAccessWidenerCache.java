@@ -0,0 +1,158 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.configuration.accesswidener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.fabricmc.loom.util.CacheStore;
+
+/**
+ * Remembers which mod jars contain a transitive access widener, keyed by jar path, size and modification time,
+ * so unchanged jars don't have to be opened again in every configuration.
+ */
+final class TransitiveAccessWidenerCache {
+	private static final int MAGIC = 0x4C544157; // LTAW
+	private static final int VERSION = 1;
+
+	private final Path file;
+	private final Map<String, Entry> entries;
+	private boolean dirty;
+
+	private TransitiveAccessWidenerCache(Path file, Map<String, Entry> entries) {
+		this.file = file;
+		this.entries = entries;
+	}
+
+	static TransitiveAccessWidenerCache read(Path file) {
+		Map<String, Entry> entries = new HashMap<>();
+
+		if (Files.exists(file)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+					int count = in.readInt();
+
+					for (int i = 0; i < count; i++) {
+						String path = in.readUTF();
+						long size = in.readLong();
+						long lastModified = in.readLong();
+						AccessWidenerFile accessWidener = null;
+
+						if (in.readBoolean()) {
+							String name = in.readUTF();
+							String modId = in.readUTF();
+							accessWidener = new AccessWidenerFile(name, modId, in.readNBytes(in.readInt()));
+						}
+
+						entries.put(path, new Entry(size, lastModified, accessWidener));
+					}
+				}
+			} catch (IOException e) {
+				// A broken cache is simply filled again
+				entries.clear();
+			}
+		}
+
+		return new TransitiveAccessWidenerCache(file, entries);
+	}
+
+	/**
+	 * Gets the transitive access widener of a mod jar, computing it when the jar is new or changed.
+	 *
+	 * @param modJar  the mod jar
+	 * @param compute reads the transitive access widener of a jar, or returns null if it has none
+	 * @return the transitive access widener, or null if the jar has none
+	 */
+	@Nullable
+	AccessWidenerFile get(Path modJar, Function<Path, AccessWidenerFile> compute) {
+		String key = modJar.toAbsolutePath().normalize().toString();
+		long size;
+		long lastModified;
+
+		try {
+			size = Files.size(modJar);
+			lastModified = Files.getLastModifiedTime(modJar).toMillis();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read attributes of " + modJar, e);
+		}
+
+		Entry entry = entries.get(key);
+
+		if (entry == null || entry.size() != size || entry.lastModified() != lastModified) {
+			entry = new Entry(size, lastModified, compute.apply(modJar));
+			entries.put(key, entry);
+			dirty = true;
+		}
+
+		return entry.accessWidener();
+	}
+
+	void save() throws IOException {
+		// Forget jars that are gone, entries of other projects sharing this cache are kept
+		dirty |= entries.keySet().removeIf(path -> Files.notExists(Path.of(path)));
+
+		if (!dirty) {
+			return;
+		}
+
+		CacheStore.publish(file, temp -> {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(entries.size());
+
+				for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+					Entry entry = mapEntry.getValue();
+					out.writeUTF(mapEntry.getKey());
+					out.writeLong(entry.size());
+					out.writeLong(entry.lastModified());
+					out.writeBoolean(entry.accessWidener() != null);
+
+					if (entry.accessWidener() != null) {
+						out.writeUTF(entry.accessWidener().name());
+						out.writeUTF(entry.accessWidener().modId());
+						out.writeInt(entry.accessWidener().content().length);
+						out.write(entry.accessWidener().content());
+					}
+				}
+			}
+		});
+		dirty = false;
+	}
+
+	private record Entry(long size, long lastModified, @Nullable AccessWidenerFile accessWidener) {
+	}
+}
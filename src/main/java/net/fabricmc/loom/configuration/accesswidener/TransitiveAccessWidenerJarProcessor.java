@@ -26,6 +26,7 @@ package net.fabricmc.loom.configuration.accesswidener;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -34,12 +35,12 @@ import java.util.List;
 import java.util.Set;
 
 import com.google.common.base.Preconditions;
-import dev.architectury.tinyremapper.TinyRemapper;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.FileCollectionDependency;
 import org.gradle.api.artifacts.ResolvedArtifact;
 import org.gradle.api.file.FileCollection;
+import org.objectweb.asm.commons.Remapper;
 
 import net.fabricmc.accesswidener.AccessWidener;
 import net.fabricmc.accesswidener.AccessWidenerReader;
@@ -51,7 +52,7 @@ import net.fabricmc.loom.api.mappings.layered.MappingsNamespace;
 import net.fabricmc.loom.configuration.RemappedConfigurationEntry;
 import net.fabricmc.loom.configuration.processors.JarProcessor;
 import net.fabricmc.loom.util.Constants;
-import net.fabricmc.loom.util.TinyRemapperHelper;
+import net.fabricmc.loom.util.MappingTreeRemapper;
 
 /**
  * Applies transitive access wideners that are inherited from mod and api dependencies.
@@ -112,29 +113,41 @@ public class TransitiveAccessWidenerJarProcessor implements JarProcessor {
 			}
 		}
 
+		TransitiveAccessWidenerCache cache = TransitiveAccessWidenerCache.read(extension.getFiles().getRootProjectPersistentCache().toPath().resolve("transitive-access-wideners.bin"));
+
 		for (Path path : possibleModJars) {
 			if (!Files.exists(path)) {
 				project.getLogger().debug("Could not find transitive access widener in {} as it does not exist", path.toAbsolutePath());
 				continue;
 			}
 
-			AccessWidenerFile accessWidener = AccessWidenerFile.fromModJar(path);
+			AccessWidenerFile accessWidener = cache.get(path, TransitiveAccessWidenerJarProcessor::readTransitiveAccessWidener);
 
-			if (accessWidener == null) {
-				continue;
-			}
-
-			if (!TransitiveDetectorVisitor.isTransitive(accessWidener.content())) {
-				// AW does not contain anything transitive, skip over it
-				continue;
+			if (accessWidener != null) {
+				accessWideners.add(accessWidener);
 			}
+		}
 
-			accessWideners.add(accessWidener);
+		try {
+			cache.save();
+		} catch (IOException e) {
+			project.getLogger().warn("Failed to save the transitive access widener cache", e);
 		}
 
 		return accessWideners;
 	}
 
+	private static AccessWidenerFile readTransitiveAccessWidener(Path modJar) {
+		AccessWidenerFile accessWidener = AccessWidenerFile.fromModJar(modJar);
+
+		if (accessWidener == null || !TransitiveDetectorVisitor.isTransitive(accessWidener.content())) {
+			// No AW, or it does not contain anything transitive
+			return null;
+		}
+
+		return accessWidener;
+	}
+
 	@Override
 	public void process(File file) {
 		Preconditions.checkArgument(!isEmpty());
@@ -147,38 +160,30 @@ public class TransitiveAccessWidenerJarProcessor implements JarProcessor {
 	private AccessWidener createAccessWidener() {
 		AccessWidener accessWidener = new AccessWidener();
 		// For other mods, only consider transitive AWs and remap from intermediary->named
-		TinyRemapper tinyRemapper = createTinyRemapper();
-
-		try {
-			AccessWidenerRemapper remappingVisitor = new AccessWidenerRemapper(
-					accessWidener,
-					tinyRemapper.getRemapper(),
-					MappingsNamespace.INTERMEDIARY.toString(),
-					MappingsNamespace.NAMED.toString()
-			);
-			AccessWidenerReader transitiveReader = new AccessWidenerReader(new TransitiveOnlyFilter(remappingVisitor));
-
-			for (AccessWidenerFile accessWidenerFile : transitiveAccessWideners) {
-				project.getLogger().info("Reading transitive access widener from {}", accessWidenerFile.modId());
-				transitiveReader.read(accessWidenerFile.content());
-			}
-		} finally {
-			tinyRemapper.finish();
+		AccessWidenerRemapper remappingVisitor = new AccessWidenerRemapper(
+				accessWidener,
+				createRemapper(),
+				MappingsNamespace.INTERMEDIARY.toString(),
+				MappingsNamespace.NAMED.toString()
+		);
+		AccessWidenerReader transitiveReader = new AccessWidenerReader(new TransitiveOnlyFilter(remappingVisitor));
+
+		for (AccessWidenerFile accessWidenerFile : transitiveAccessWideners) {
+			project.getLogger().info("Reading transitive access widener from {}", accessWidenerFile.modId());
+			transitiveReader.read(accessWidenerFile.content());
 		}
 
 		return accessWidener;
 	}
 
-	private TinyRemapper createTinyRemapper() {
+	private Remapper createRemapper() {
 		try {
-			TinyRemapper tinyRemapper = TinyRemapperHelper.getTinyRemapper(project, "intermediary", "named");
-
-			tinyRemapper.readClassPath(TinyRemapperHelper.getMinecraftDependencies(project));
-			tinyRemapper.readClassPath(extension.getMinecraftMappedProvider().getIntermediaryJar().toPath());
-
-			return tinyRemapper;
+			// The class index is only read when an inherited member has to be resolved
+			Path intermediaryJar = extension.getMinecraftMappedProvider().getIntermediaryJar().toPath();
+			return new MappingTreeRemapper(extension.getMappingsProvider().getMappings(), MappingsNamespace.INTERMEDIARY.toString(), MappingsNamespace.NAMED.toString(),
+					owner -> extension.getClassIndex(intermediaryJar).getClassEntry(owner));
 		} catch (IOException e) {
-			throw new RuntimeException("Failed to create tiny remapper for intermediary->named", e);
+			throw new UncheckedIOException("Failed to read mappings for intermediary->named", e);
 		}
 	}
 
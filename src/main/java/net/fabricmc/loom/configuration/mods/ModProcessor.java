@@ -62,6 +62,7 @@ import net.fabricmc.loom.configuration.providers.minecraft.MinecraftMappedProvid
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.FileSystemUtil;
 import net.fabricmc.loom.util.LoggerFilter;
+import net.fabricmc.loom.util.ThreadingUtils;
 import net.fabricmc.loom.util.TinyRemapperHelper;
 import net.fabricmc.loom.util.ZipUtils;
 import net.fabricmc.loom.util.srg.AtRemapper;
@@ -80,9 +81,13 @@ public class ModProcessor {
 
 	public void processMods(List<ModDependencyInfo> processList) throws IOException {
 		ArrayList<ModDependencyInfo> remapList = new ArrayList<>();
+		// Checking hashes the inputs, do it in parallel
+		List<Boolean> requiresRemapping = ThreadingUtils.get(processList, ModDependencyInfo::requiresRemapping);
 
-		for (ModDependencyInfo info : processList) {
-			if (info.requiresRemapping()) {
+		for (int i = 0; i < processList.size(); i++) {
+			ModDependencyInfo info = processList.get(i);
+
+			if (requiresRemapping.get(i)) {
 				project.getLogger().debug("{} requires remapping", info.getInputFile());
 				Files.deleteIfExists(info.getRemappedOutput().toPath());
 
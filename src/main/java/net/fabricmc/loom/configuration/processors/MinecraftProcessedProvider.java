@@ -95,4 +95,10 @@ public class MinecraftProcessedProvider extends MinecraftMappedProvider {
 	public File getMappedJar() {
 		return projectMappedJar;
 	}
+
+	@Override
+	protected String getRefreshKey() {
+		// The processed jar belongs to this project
+		return null;
+	}
 }
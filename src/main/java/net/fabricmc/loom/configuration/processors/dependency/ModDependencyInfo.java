@@ -24,7 +24,11 @@
 
 package net.fabricmc.loom.configuration.processors.dependency;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
@@ -39,9 +43,13 @@ import org.jetbrains.annotations.Nullable;
 import net.fabricmc.accesswidener.AccessWidenerReader;
 import net.fabricmc.loom.LoomGradlePlugin;
 import net.fabricmc.loom.api.mappings.layered.MappingsNamespace;
+import net.fabricmc.loom.util.Checksum;
 import net.fabricmc.loom.util.ZipUtils;
 
 public class ModDependencyInfo {
+	private static final int METADATA_MAGIC = 0x4C524D4D; // LRMM
+	private static final int METADATA_VERSION = 1;
+
 	private final String group;
 	public final String name;
 	public final String version;
@@ -100,6 +108,10 @@ public class ModDependencyInfo {
 		return new File(getRemappedDir(), getRemappedFilename(false) + "-" + classifier + ".jar");
 	}
 
+	private File getRemappedMetadata() {
+		return new File(getRemappedDir(), getRemappedFilename(true) + ".remap");
+	}
+
 	private File getRemappedPom() {
 		return new File(getRemappedDir(), String.format("%s-%s", name, version) + ".pom");
 	}
@@ -140,18 +152,63 @@ public class ModDependencyInfo {
 		return !MappingsNamespace.NAMED.toString().equals(outputAWData.header().getNamespace());
 	}
 
+	/**
+	 * Checks whether the remapped output is missing or was made from a different input or with different mappings.
+	 * Only the input is hashed, the remapped jar is not opened.
+	 */
 	public boolean requiresRemapping() {
-		return !getRemappedOutput().exists() || inputFile.lastModified() <= 0 || inputFile.lastModified() > getRemappedOutput().lastModified() || forceRemap || !getRemappedPom().exists() || outputHasInvalidAccessWidener();
+		return forceRemap || !getRemappedOutput().exists() || !getRemappedPom().exists() || !createMetadata().equals(readMetadata());
 	}
 
 	public void finaliseRemapping() {
-		getRemappedOutput().setLastModified(inputFile.lastModified());
 		savePom();
 
 		// Validate that the remapped AW is what we want.
 		if (outputHasInvalidAccessWidener()) {
 			throw new RuntimeException("Failed to validate remapped access widener in " + getRemappedOutput());
 		}
+
+		saveMetadata();
+	}
+
+	private RemapMetadata createMetadata() {
+		return new RemapMetadata(Checksum.truncatedSha256(inputFile), remapData.mappingsHash(), remapData.namespaces(), LoomGradlePlugin.LOOM_VERSION, getRemappedOutput().length());
+	}
+
+	@Nullable
+	private RemapMetadata readMetadata() {
+		File file = getRemappedMetadata();
+
+		if (!file.exists()) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			if (in.readInt() != METADATA_MAGIC || in.readInt() != METADATA_VERSION) {
+				return null;
+			}
+
+			return new RemapMetadata(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readLong());
+		} catch (IOException e) {
+			// Broken metadata, remap again
+			return null;
+		}
+	}
+
+	private void saveMetadata() {
+		RemapMetadata metadata = createMetadata();
+
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(getRemappedMetadata()))) {
+			out.writeInt(METADATA_MAGIC);
+			out.writeInt(METADATA_VERSION);
+			out.writeUTF(metadata.inputHash());
+			out.writeUTF(metadata.mappingsHash());
+			out.writeUTF(metadata.namespaces());
+			out.writeUTF(metadata.loomVersion());
+			out.writeLong(metadata.outputSize());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to write remap metadata of " + getRemappedOutput(), e);
+		}
 	}
 
 	private void savePom() {
@@ -217,6 +274,9 @@ public class ModDependencyInfo {
 		return new AccessWidenerData(accessWidenerPath, header, accessWidener);
 	}
 
+	private record RemapMetadata(String inputHash, String mappingsHash, String namespaces, String loomVersion, long outputSize) {
+	}
+
 	public record AccessWidenerData(String path, AccessWidenerReader.Header header, byte[] content) {
 	}
 }
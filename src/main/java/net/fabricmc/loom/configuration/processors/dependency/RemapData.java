@@ -26,5 +26,9 @@ package net.fabricmc.loom.configuration.processors.dependency;
 
 import java.io.File;
 
-public record RemapData(String mappingsSuffix, File modStore) {
+/**
+ * @param mappingsHash the hash of the mappings file mods are remapped with
+ * @param namespaces the source and target namespace of the remap
+ */
+public record RemapData(String mappingsSuffix, File modStore, String mappingsHash, String namespaces) {
 }
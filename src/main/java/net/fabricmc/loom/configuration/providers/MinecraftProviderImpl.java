@@ -25,12 +25,10 @@
 package net.fabricmc.loom.configuration.providers;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.StandardCopyOption;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Consumer;
@@ -38,24 +36,32 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.hash.HashCode;
 import com.google.common.io.Files;
 import org.gradle.api.GradleException;
 import org.gradle.api.Project;
 import org.gradle.api.logging.Logger;
 
-import net.fabricmc.loom.LoomGradlePlugin;
 import net.fabricmc.loom.configuration.DependencyProvider;
+import net.fabricmc.loom.configuration.SharedSetupService;
 import net.fabricmc.loom.configuration.providers.minecraft.ManifestVersion;
 import net.fabricmc.loom.configuration.providers.minecraft.MinecraftLibraryProvider;
 import net.fabricmc.loom.configuration.providers.minecraft.MinecraftVersionMeta;
+import net.fabricmc.loom.configuration.providers.minecraft.VersionManifestCache;
+import net.fabricmc.loom.util.CacheStore;
+import net.fabricmc.loom.util.Checksum;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.MirrorUtil;
 import net.fabricmc.loom.util.DownloadUtil;
 import net.fabricmc.loom.util.HashedDownloadUtil;
+import net.fabricmc.loom.util.ThreadingUtils;
 import net.fabricmc.loom.util.ZipUtils;
 import net.fabricmc.stitch.merge.JarMerger;
 
 public class MinecraftProviderImpl extends DependencyProvider implements MinecraftProvider {
+	// Bump this when the merged jar changes for the same inputs
+	private static final int MERGED_JAR_VERSION = 1;
+
 	private String minecraftVersion;
 
 	private MinecraftVersionMeta versionInfo;
@@ -69,7 +75,10 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 	// The extracted server jar from the boostrap, only exists in >=21w39a
 	public File minecraftExtractedServerJar;
 	private Boolean isNewerThan21w39a;
+	// The server jar to merge, resolved once per provider
+	private File serverJarToMerge;
 	private File minecraftMergedJar;
+	private File minecraftMergedJarKey;
 	private File versionManifestJson;
 	private File experimentalVersionsJson;
 	private String jarPrefix = "";
@@ -92,9 +101,7 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 
 		downloadMcJson(offline);
 
-		try (FileReader reader = new FileReader(minecraftJson)) {
-			versionInfo = LoomGradlePlugin.OBJECT_MAPPER.readValue(reader, MinecraftVersionMeta.class);
-		}
+		versionInfo = VersionManifestCache.read(minecraftJson, MinecraftVersionMeta.class);
 
 		if (offline) {
 			if (minecraftClientJar.exists() && minecraftServerJar.exists()) {
@@ -106,24 +113,41 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 				throw new GradleException("Missing jar(s); Client: " + minecraftClientJar.exists() + ", Server: " + minecraftServerJar.exists());
 			}
 		} else {
-			downloadJars(getProject().getLogger());
+			SharedSetupService.get(getProject()).runOnce("minecraft:" + workingDir.getAbsolutePath(), () -> downloadJars(getProject().getLogger()));
 		}
 
 		libraryProvider = new MinecraftLibraryProvider();
 		libraryProvider.provide(this, getProject());
 
-		if (!minecraftMergedJar.exists() || isRefreshDeps()) {
-			try {
-				mergeJars(getProject().getLogger());
-			} catch (Throwable e) {
-				HashedDownloadUtil.delete(minecraftClientJar);
-				HashedDownloadUtil.delete(minecraftServerJar);
-				minecraftMergedJar.delete();
-
-				getProject().getLogger().error("Could not merge JARs! Deleting source JARs - please re-run the command and move on.", e);
-				throw e;
+		// Other projects of the build skip the merge, other builds sharing the cache wait for it and then find the merged jar up-to-date
+		SharedSetupService.get(getProject()).runOnce("merge:" + minecraftMergedJar.getAbsolutePath(), () -> {
+			try (CacheStore.Lock lock = CacheStore.lock(minecraftMergedJar.toPath())) {
+				if (!isMergedJarUpToDate()) {
+					try {
+						mergeJars(getProject().getLogger());
+					} catch (Throwable e) {
+						try {
+							// Other builds may still be reading or downloading the source jars
+							HashedDownloadUtil.invalidate(minecraftClientJar);
+							HashedDownloadUtil.invalidate(minecraftServerJar);
+
+							try (CacheStore.Lock serverLock = CacheStore.lock(minecraftExtractedServerJar.toPath())) {
+								CacheStore.invalidate(minecraftExtractedServerJar.toPath());
+							}
+						} catch (IOException e2) {
+							e.addSuppressed(e2);
+						}
+
+						minecraftMergedJar.delete();
+						minecraftMergedJarKey.delete();
+						serverJarToMerge = null;
+
+						getProject().getLogger().error("Could not merge JARs! Deleting source JARs - please re-run the command and move on.", e);
+						throw e;
+					}
+				}
 			}
-		}
+		});
 	}
 
 	private void initFiles() {
@@ -134,6 +158,7 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 		minecraftServerJar = file("minecraft-server.jar");
 		minecraftExtractedServerJar = file("minecraft-extracted_server.jar");
 		minecraftMergedJar = file("minecraft-merged.jar");
+		minecraftMergedJarKey = file("minecraft-merged.jar.key");
 		versionManifestJson = new File(getDirectories().getUserCache(), "version_manifest.json");
 		experimentalVersionsJson = new File(getDirectories().getUserCache(), "experimental_version_manifest.json");
 	}
@@ -141,7 +166,9 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 	public void deleteFiles() {
 		DownloadUtil.delete(minecraftClientJar);
 		DownloadUtil.delete(minecraftServerJar);
+		DownloadUtil.delete(minecraftExtractedServerJar);
 		DownloadUtil.delete(minecraftMergedJar);
+		DownloadUtil.delete(minecraftMergedJarKey);
 		DownloadUtil.delete(versionManifestJson);
 		DownloadUtil.delete(experimentalVersionsJson);
 	}
@@ -151,24 +178,6 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 			return;
 		}
 
-		if (!offline && !isRefreshDeps() && hasRecentValidManifest()) {
-			// We have a recent valid manifest file, so do nothing
-		} else if (offline) {
-			if (versionManifestJson.exists()) {
-				// If there is the manifests already we'll presume that's good enough
-				getProject().getLogger().debug("Found version manifests, presuming up-to-date");
-			} else {
-				// If we don't have the manifests then there's nothing more we can do
-				throw new GradleException("Version manifests not found at " + versionManifestJson.getAbsolutePath());
-			}
-		} else {
-			getProject().getLogger().debug("Downloading version manifests");
-			DownloadUtil.downloadIfChanged(new URL(MirrorUtil.getVersionManifests(getProject())), versionManifestJson, getProject().getLogger());
-		}
-
-		String versionManifest = Files.asCharSource(versionManifestJson, StandardCharsets.UTF_8).read();
-		ManifestVersion mcManifest = LoomGradlePlugin.OBJECT_MAPPER.readValue(versionManifest, ManifestVersion.class);
-
 		Optional<ManifestVersion.Versions> optionalVersion = Optional.empty();
 
 		if (getExtension().getCustomMinecraftManifest().isPresent()) {
@@ -180,7 +189,7 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 		}
 
 		if (optionalVersion.isEmpty()) {
-			optionalVersion = mcManifest.versions().stream().filter(versions -> versions.id.equalsIgnoreCase(minecraftVersion)).findFirst();
+			optionalVersion = getVersionManifest(offline).getVersion(minecraftVersion);
 
 			if (optionalVersion.isEmpty()) {
 				optionalVersion = findExperimentalVersion(offline);
@@ -214,21 +223,38 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 		}
 	}
 
+	private ManifestVersion getVersionManifest(boolean offline) throws IOException {
+		if (offline) {
+			if (versionManifestJson.exists()) {
+				// If there is the manifests already we'll presume that's good enough
+				getProject().getLogger().debug("Found version manifests, presuming up-to-date");
+			} else {
+				// If we don't have the manifests then there's nothing more we can do
+				throw new GradleException("Version manifests not found at " + versionManifestJson.getAbsolutePath());
+			}
+
+			return VersionManifestCache.read(versionManifestJson, ManifestVersion.class);
+		}
+
+		return VersionManifestCache.fetch(getProject(), MirrorUtil.getVersionManifests(getProject()), versionManifestJson, minecraftVersion);
+	}
+
 	// This attempts to find the version from fabric's own fallback version manifest json.
 	private Optional<ManifestVersion.Versions> findExperimentalVersion(boolean offline) throws IOException {
+		ManifestVersion expManifest;
+
 		if (offline) {
 			if (!experimentalVersionsJson.exists()) {
 				getProject().getLogger().warn("Skipping download of experimental versions jsons due to being offline.");
 				return Optional.empty();
 			}
+
+			expManifest = VersionManifestCache.read(experimentalVersionsJson, ManifestVersion.class);
 		} else {
-			DownloadUtil.downloadIfChanged(new URL(MirrorUtil.getExperimentalVersions(getProject())), experimentalVersionsJson, getProject().getLogger());
+			expManifest = VersionManifestCache.fetch(getProject(), MirrorUtil.getExperimentalVersions(getProject()), experimentalVersionsJson, minecraftVersion);
 		}
 
-		String expVersionManifest = Files.asCharSource(experimentalVersionsJson, StandardCharsets.UTF_8).read();
-		ManifestVersion expManifest = LoomGradlePlugin.OBJECT_MAPPER.readValue(expVersionManifest, ManifestVersion.class);
-
-		Optional<ManifestVersion.Versions> result = expManifest.versions().stream().filter(versions -> versions.id.equalsIgnoreCase(minecraftVersion)).findFirst();
+		Optional<ManifestVersion.Versions> result = expManifest.getVersion(minecraftVersion);
 
 		if (result.isPresent()) {
 			getProject().getLogger().lifecycle("Using fallback experimental version {}", minecraftVersion);
@@ -237,27 +263,6 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 		return result;
 	}
 
-	private boolean hasRecentValidManifest() throws IOException {
-		if (getExtension().getCustomMinecraftManifest().isPresent()) {
-			return false;
-		}
-
-		if (!versionManifestJson.exists() || !minecraftJson.exists()) {
-			return false;
-		}
-
-		if (versionManifestJson.lastModified() > System.currentTimeMillis() - 24 * 3_600_000) {
-			// Version manifest hasn't been modified in 24 hours, time to get a new one.
-			return false;
-		}
-
-		ManifestVersion manifest = LoomGradlePlugin.OBJECT_MAPPER.readValue(Files.asCharSource(versionManifestJson, StandardCharsets.UTF_8).read(), ManifestVersion.class);
-		Optional<ManifestVersion.Versions> version = manifest.versions().stream().filter(versions -> versions.id.equalsIgnoreCase(minecraftVersion)).findFirst();
-
-		// fail if the expected mc version was not found, will download the file again.
-		return version.isPresent();
-	}
-
 	private void downloadJars(Logger logger) throws IOException {
 		if (getExtension().getShareRemapCaches().get() && !getExtension().isRootProject() && minecraftClientJar.exists() && minecraftServerJar.exists() && !isRefreshDeps()) {
 			return;
@@ -266,23 +271,56 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 		MinecraftVersionMeta.Download client = versionInfo.download("client");
 		MinecraftVersionMeta.Download server = versionInfo.download("server");
 
-		HashedDownloadUtil.downloadIfInvalid(new URL(client.url()), minecraftClientJar, client.sha1(), logger, false);
-		HashedDownloadUtil.downloadIfInvalid(new URL(server.url()), minecraftServerJar, server.sha1(), logger, false);
+		// The server bootstrap is extracted while the client is still downloading
+		ThreadingUtils.run(
+				() -> HashedDownloadUtil.downloadIfInvalid(new URL(client.url()), minecraftClientJar, client.sha1(), logger, false),
+				() -> {
+					HashedDownloadUtil.downloadIfInvalid(new URL(server.url()), minecraftServerJar, server.sha1(), logger, false);
+					getServerJarToMerge(logger);
+				}
+		);
 	}
 
 	private void mergeJars(Logger logger) throws IOException {
 		logger.info(":merging jars");
 		Stopwatch stopwatch = Stopwatch.createStarted();
 
-		try (JarMerger jarMerger = new JarMerger(minecraftClientJar, getServerJarToMerge(logger), minecraftMergedJar)) {
-			jarMerger.enableSyntheticParamsOffset();
-			jarMerger.merge();
-		}
+		File serverJar = getServerJarToMerge(logger);
 
+		CacheStore.publish(minecraftMergedJar.toPath(), tempFile -> {
+			try (JarMerger jarMerger = new JarMerger(minecraftClientJar, serverJar, tempFile.toFile())) {
+				jarMerger.enableSyntheticParamsOffset();
+				jarMerger.merge();
+			}
+		});
+
+		// Published after the jar, a crash in between leaves a stale key and the jar is merged again
+		CacheStore.publish(minecraftMergedJarKey.toPath(), tempFile -> Files.asCharSink(tempFile.toFile(), StandardCharsets.UTF_8).write(getMergedJarKey()));
 		logger.info(":merged jars in " + stopwatch);
 	}
 
-	private File getServerJarToMerge(Logger logger) throws IOException {
+	// The merged jar only depends on the client and server jars, so it is reused for as long as their hashes match.
+	private boolean isMergedJarUpToDate() throws IOException {
+		if (!minecraftMergedJar.exists() || !minecraftMergedJarKey.exists()) {
+			return false;
+		}
+
+		return getMergedJarKey().equals(Files.asCharSource(minecraftMergedJarKey, StandardCharsets.UTF_8).read());
+	}
+
+	private String getMergedJarKey() {
+		return "%d:%s:%s".formatted(MERGED_JAR_VERSION, versionInfo.download("client").sha1(), versionInfo.download("server").sha1());
+	}
+
+	private synchronized File getServerJarToMerge(Logger logger) throws IOException {
+		if (serverJarToMerge == null) {
+			serverJarToMerge = extractServerJar(logger);
+		}
+
+		return serverJarToMerge;
+	}
+
+	private File extractServerJar(Logger logger) throws IOException {
 		try (ZipFile zipFile = new ZipFile(minecraftServerJar)) {
 			ZipEntry versionsListEntry = zipFile.getEntry("META-INF/versions.list");
 
@@ -291,8 +329,6 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 				return minecraftServerJar;
 			}
 
-			logger.info(":Extracting server jar from bootstrap");
-
 			String versionsList;
 
 			try (InputStream is = zipFile.getInputStream(versionsListEntry)) {
@@ -300,6 +336,7 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 			}
 
 			String jarPath = null;
+			String jarHash = null;
 			String[] versions = versionsList.split("\n");
 
 			if (versions.length != 1) {
@@ -319,21 +356,47 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 
 				// Take the first (only) version we find.
 				jarPath = path;
+				jarHash = hash;
 				break;
 			}
 
 			Objects.requireNonNull(jarPath, "Could not find minecraft server jar for " + minecraftVersion());
-			ZipEntry serverJarEntry = zipFile.getEntry("META-INF/versions/" + jarPath);
-			Objects.requireNonNull(serverJarEntry, "Could not find server jar in boostrap@ " + jarPath);
 
-			try (InputStream is = zipFile.getInputStream(serverJarEntry)) {
-				java.nio.file.Files.copy(is, minecraftExtractedServerJar.toPath(), StandardCopyOption.REPLACE_EXISTING);
-			}
+			String expectedHash = jarHash;
+
+			// Other builds sharing the cache wait for the extraction, then find the extracted jar up-to-date
+			try (CacheStore.Lock lock = CacheStore.lock(minecraftExtractedServerJar.toPath())) {
+				if (minecraftExtractedServerJar.exists() && expectedHash.equalsIgnoreCase(sha256(minecraftExtractedServerJar))) {
+					logger.debug("Found extracted server jar, hash matches");
+					return minecraftExtractedServerJar;
+				}
+
+				ZipEntry serverJarEntry = zipFile.getEntry("META-INF/versions/" + jarPath);
+				Objects.requireNonNull(serverJarEntry, "Could not find server jar in boostrap@ " + jarPath);
+
+				logger.info(":Extracting server jar from bootstrap");
+
+				CacheStore.publish(minecraftExtractedServerJar.toPath(), tempJar -> {
+					try (InputStream is = zipFile.getInputStream(serverJarEntry)) {
+						java.nio.file.Files.copy(is, tempJar);
+					}
 
-			return minecraftExtractedServerJar;
+					String extractedHash = sha256(tempJar.toFile());
+
+					if (!expectedHash.equalsIgnoreCase(extractedHash)) {
+						throw new IOException("Extracted server jar hash %s does not match %s from META-INF/versions.list".formatted(extractedHash, expectedHash));
+					}
+				});
+
+				return minecraftExtractedServerJar;
+			}
 		}
 	}
 
+	private static String sha256(File file) {
+		return HashCode.fromBytes(Checksum.sha256(file)).toString();
+	}
+
 	public File getMinecraftServerJar() {
 		if (isNewerThan21w39a()) {
 			try {
@@ -411,6 +474,11 @@ public class MinecraftProviderImpl extends DependencyProvider implements Minecra
 		this.jarPrefix = jarSuffix;
 	}
 
+	@Override
+	protected String getRefreshKey() {
+		return minecraftVersion;
+	}
+
 	@Override
 	public String getTargetConfig() {
 		return Constants.Configurations.MINECRAFT;
@@ -34,11 +34,11 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import com.google.common.base.Stopwatch;
@@ -48,18 +48,13 @@ import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import dev.architectury.refmapremapper.utils.DescriptorRemapper;
 import org.gradle.api.Project;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.FieldVisitor;
-import org.objectweb.asm.Opcodes;
 
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.LoomGradlePlugin;
 import net.fabricmc.loom.api.mappings.layered.MappingsNamespace;
 import net.fabricmc.loom.configuration.providers.mappings.MappingsProviderImpl;
-import net.fabricmc.loom.util.FileSystemUtil;
 import net.fabricmc.loom.util.ThreadingUtils;
-import net.fabricmc.loom.util.srg.SrgMerger;
+import net.fabricmc.loom.util.classindex.ClassIndex;
 import net.fabricmc.mappingio.MappingReader;
 import net.fabricmc.mappingio.format.Tiny2Writer;
 import net.fabricmc.mappingio.tree.MappingTree;
@@ -71,6 +66,7 @@ public class FieldMigratedMappingsProvider extends MappingsProviderImpl {
 	public Path migratedFieldsCache;
 	public Path rawTinyMappings;
 	public Path rawTinyMappingsWithSrg;
+	private MemoryMappingTree rawMappingsWithSrg;
 
 	public FieldMigratedMappingsProvider(Project project) {
 		super(project);
@@ -123,7 +119,7 @@ public class FieldMigratedMappingsProvider extends MappingsProviderImpl {
 		if (getExtension().shouldGenerateSrgTiny()) {
 			if (Files.notExists(rawTinyMappingsWithSrg) || isRefreshDeps()) {
 				// Merge tiny mappings with srg
-				SrgMerger.mergeSrg(getProject().getLogger(), getExtension().getMappingsProvider()::getMojmapSrgFileIfPossible, getRawSrgFile(), rawTinyMappings, rawTinyMappingsWithSrg, true, false);
+				rawMappingsWithSrg = mergeSrg(rawTinyMappings, rawTinyMappingsWithSrg, false);
 			}
 		}
 
@@ -185,77 +181,57 @@ public class FieldMigratedMappingsProvider extends MappingsProviderImpl {
 	}
 
 	private void generateNewFieldMigration() throws IOException {
-		Map<FieldMember, String> fieldDescriptorMap = new ConcurrentHashMap<>();
-		LoomGradleExtension extension = getExtension();
-		ThreadingUtils.TaskCompleter completer = ThreadingUtils.taskCompleter();
-
-		class Visitor extends ClassVisitor {
-			private final ThreadLocal<String> lastClass = new ThreadLocal<>();
-
-			Visitor(int api) {
-				super(api);
-			}
-
-			@Override
-			public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-				lastClass.set(name);
-			}
-
-			@Override
-			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
-				fieldDescriptorMap.put(new FieldMember(lastClass.get(), name), descriptor);
-				return super.visitField(access, name, descriptor, signature, value);
+		Map<FieldMember, String> fieldDescriptorMap = new HashMap<>();
+		MinecraftPatchedProvider.Environment[] environments = MinecraftPatchedProvider.Environment.values();
+		List<ClassIndex> indexes = ThreadingUtils.get(Arrays.asList(environments), environment -> {
+			File patchedSrgJar = environment.patchedSrgJar.apply(getExtension().getMappingsProvider().patchedProvider);
+			return getExtension().getClassIndex(patchedSrgJar.toPath());
+		});
+
+		for (ClassIndex index : indexes) {
+			for (ClassIndex.ClassEntry classEntry : index.getClasses()) {
+				for (ClassIndex.MemberEntry field : classEntry.fields()) {
+					fieldDescriptorMap.put(new FieldMember(classEntry.name(), field.name()), field.descriptor());
+				}
 			}
 		}
 
-		Visitor visitor = new Visitor(Opcodes.ASM9);
+		Map<FieldMember, String> migratedFields = new HashMap<>();
+		MemoryMappingTree mappings = rawMappingsWithSrg;
 
-		for (MinecraftPatchedProvider.Environment environment : MinecraftPatchedProvider.Environment.values()) {
-			File patchedSrgJar = environment.patchedSrgJar.apply(extension.getMappingsProvider().patchedProvider);
-			FileSystemUtil.Delegate system = FileSystemUtil.getJarFileSystem(patchedSrgJar, false);
-			completer.onComplete(value -> system.close());
+		if (mappings == null) {
+			// The srg mappings were merged in a previous build, read them back
+			mappings = new MemoryMappingTree();
 
-			for (Path fsPath : (Iterable<? extends Path>) Files.walk(system.get().getPath("/"))::iterator) {
-				if (Files.isRegularFile(fsPath) && fsPath.toString().endsWith(".class")) {
-					completer.add(() -> {
-						byte[] bytes = Files.readAllBytes(fsPath);
-						new ClassReader(bytes).accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-					});
-				}
+			try (BufferedReader reader = Files.newBufferedReader(rawTinyMappingsWithSrg)) {
+				MappingReader.read(reader, mappings);
 			}
 		}
 
-		completer.complete();
-		Map<FieldMember, String> migratedFields = new HashMap<>();
-
-		try (BufferedReader reader = Files.newBufferedReader(rawTinyMappingsWithSrg)) {
-			MemoryMappingTree mappings = new MemoryMappingTree();
-			MappingReader.read(reader, mappings);
-			Map<String, String> srgToIntermediary = new HashMap<>();
+		Map<String, String> srgToIntermediary = new HashMap<>();
 
-			for (MappingTree.ClassMapping aClass : mappings.getClasses()) {
-				srgToIntermediary.put(aClass.getName("srg"), aClass.getName("intermediary"));
-			}
+		for (MappingTree.ClassMapping aClass : mappings.getClasses()) {
+			srgToIntermediary.put(aClass.getName("srg"), aClass.getName("intermediary"));
+		}
 
-			for (MappingTree.ClassMapping classDef : mappings.getClasses()) {
-				String ownerSrg = classDef.getName("srg");
-				String ownerIntermediary = classDef.getName("intermediary");
+		for (MappingTree.ClassMapping classDef : mappings.getClasses()) {
+			String ownerSrg = classDef.getName("srg");
+			String ownerIntermediary = classDef.getName("intermediary");
 
-				for (MappingTree.FieldMapping fieldDef : classDef.getFields()) {
-					String fieldSrg = fieldDef.getName("srg");
-					String descriptorSrg = fieldDef.getDesc("srg");
+			for (MappingTree.FieldMapping fieldDef : classDef.getFields()) {
+				String fieldSrg = fieldDef.getName("srg");
+				String descriptorSrg = fieldDef.getDesc("srg");
 
-					FieldMember member = new FieldMember(ownerSrg, fieldSrg);
-					String newDescriptor = fieldDescriptorMap.get(member);
+				FieldMember member = new FieldMember(ownerSrg, fieldSrg);
+				String newDescriptor = fieldDescriptorMap.get(member);
 
-					if (newDescriptor != null && !newDescriptor.equals(descriptorSrg)) {
-						String fieldIntermediary = fieldDef.getName("intermediary");
-						String descriptorIntermediary = fieldDef.getDesc("intermediary");
-						String newDescriptorRemapped = DescriptorRemapper.remapDescriptor(newDescriptor,
-								clazz -> srgToIntermediary.getOrDefault(clazz, clazz));
-						migratedFields.put(new FieldMember(ownerIntermediary, fieldIntermediary), newDescriptorRemapped);
-						getProject().getLogger().info(ownerIntermediary + "#" + fieldIntermediary + ": " + descriptorIntermediary + " -> " + newDescriptorRemapped);
-					}
+				if (newDescriptor != null && !newDescriptor.equals(descriptorSrg)) {
+					String fieldIntermediary = fieldDef.getName("intermediary");
+					String descriptorIntermediary = fieldDef.getDesc("intermediary");
+					String newDescriptorRemapped = DescriptorRemapper.remapDescriptor(newDescriptor,
+							clazz -> srgToIntermediary.getOrDefault(clazz, clazz));
+					migratedFields.put(new FieldMember(ownerIntermediary, fieldIntermediary), newDescriptorRemapped);
+					getProject().getLogger().info(ownerIntermediary + "#" + fieldIntermediary + ": " + descriptorIntermediary + " -> " + newDescriptorRemapped);
 				}
 			}
 		}
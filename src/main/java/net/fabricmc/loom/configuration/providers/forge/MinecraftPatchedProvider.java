@@ -87,6 +87,7 @@ import org.objectweb.asm.tree.ClassNode;
 
 import net.fabricmc.loom.configuration.DependencyProvider;
 import net.fabricmc.loom.configuration.providers.MinecraftProviderImpl;
+import net.fabricmc.loom.util.CacheStore;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DependencyDownloader;
 import net.fabricmc.loom.util.FileSystemUtil;
@@ -149,7 +150,8 @@ public class MinecraftPatchedProvider extends DependencyProvider {
 			}
 		}
 
-		if (isRefreshDeps() || !projectAtHash.exists()) {
+		// The AT hash belongs to this project, refresh it even when another project claimed the shared refresh
+		if (isRefreshProjectDeps() || !projectAtHash.exists()) {
 			writeAtHash();
 			atDirty = !projectAts.isEmpty();
 		} else {
@@ -213,7 +215,11 @@ public class MinecraftPatchedProvider extends DependencyProvider {
 
 	public void cleanAllCache() {
 		for (File file : getGlobalCaches()) {
-			file.delete();
+			try {
+				CacheStore.invalidate(file.toPath());
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to delete " + file, e);
+			}
 		}
 
 		cleanProjectCache();
@@ -246,9 +252,11 @@ public class MinecraftPatchedProvider extends DependencyProvider {
 	}
 
 	private boolean dirty;
+	private CacheStore.Lock globalCacheLock;
 
 	@Override
 	public void provide(DependencyInfo dependency, Consumer<Runnable> postPopulationScheduler) throws Exception {
+		lockGlobalCache();
 		initFiles();
 
 		if (atDirty) {
@@ -299,6 +307,23 @@ public class MinecraftPatchedProvider extends DependencyProvider {
 		}
 	}
 
+	/**
+	 * Locks the global Forge cache until {@link #releaseGlobalCache()}, so that other builds sharing the cache neither
+	 * clean nor read it while it is only partially built.
+	 */
+	protected void lockGlobalCache() throws IOException {
+		if (globalCacheLock == null) {
+			globalCacheLock = CacheStore.lock(getExtension().getForgeProvider().getGlobalCache().toPath());
+		}
+	}
+
+	public void releaseGlobalCache() throws IOException {
+		if (globalCacheLock != null) {
+			globalCacheLock.close();
+			globalCacheLock = null;
+		}
+	}
+
 	private void fillClientExtraJar() throws IOException {
 		Files.deleteIfExists(minecraftClientExtra.toPath());
 		FileSystemUtil.getJarFileSystem(minecraftClientExtra, true).close();
@@ -785,6 +810,11 @@ public class MinecraftPatchedProvider extends DependencyProvider {
 		return atDirty || filesDirty;
 	}
 
+	@Override
+	protected String getRefreshKey() {
+		return getExtension().getForgeProvider().getGlobalCache().getAbsolutePath();
+	}
+
 	@Override
 	public String getTargetConfig() {
 		return Constants.Configurations.MINECRAFT;
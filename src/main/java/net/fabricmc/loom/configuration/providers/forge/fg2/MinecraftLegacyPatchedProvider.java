@@ -132,6 +132,7 @@ public class MinecraftLegacyPatchedProvider extends MinecraftPatchedProvider {
 
 	@Override
 	public void provide(DependencyInfo dependency, Consumer<Runnable> postPopulationScheduler) throws Exception {
+		lockGlobalCache();
 		initFiles();
 
 		if (atDirty) {
@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
@@ -37,12 +38,12 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
@@ -60,6 +61,7 @@ import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.LoomGradlePlugin;
 import net.fabricmc.loom.api.mappings.layered.MappingsNamespace;
 import net.fabricmc.loom.configuration.DependencyProvider;
+import net.fabricmc.loom.configuration.SharedSetupService;
 import net.fabricmc.loom.configuration.accesswidener.AccessWidenerJarProcessor;
 import net.fabricmc.loom.configuration.accesswidener.TransitiveAccessWidenerJarProcessor;
 import net.fabricmc.loom.configuration.processors.JarProcessorManager;
@@ -68,6 +70,7 @@ import net.fabricmc.loom.configuration.providers.MinecraftProviderImpl;
 import net.fabricmc.loom.configuration.providers.forge.MinecraftPatchedProvider;
 import net.fabricmc.loom.configuration.providers.forge.SrgProvider;
 import net.fabricmc.loom.configuration.providers.forge.fg2.MinecraftLegacyPatchedProvider;
+import net.fabricmc.loom.configuration.providers.mappings.utils.NamespaceRenamingMappingVisitor;
 import net.fabricmc.loom.configuration.providers.minecraft.MinecraftMappedProvider;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DeletingFileVisitor;
@@ -78,6 +81,7 @@ import net.fabricmc.loom.util.srg.MCPReader;
 import net.fabricmc.loom.util.srg.SrgMerger;
 import net.fabricmc.loom.util.srg.SrgNamedWriter;
 import net.fabricmc.mappingio.MappingReader;
+import net.fabricmc.mappingio.MappingVisitor;
 import net.fabricmc.mappingio.MappingWriter;
 import net.fabricmc.mappingio.adapter.MappingNsCompleter;
 import net.fabricmc.mappingio.adapter.MappingSourceNsSwitch;
@@ -115,6 +119,7 @@ public class MappingsProviderImpl extends DependencyProvider implements Mappings
 	private MemoryMappingTree mappingTree;
 	private MemoryMappingTree mappingTreeWithSrg;
 	private Map<String, String> signatureFixes;
+	private CompletableFuture<Void> pendingMappingsWrites = CompletableFuture.completedFuture(null);
 
 	public MappingsProviderImpl(Project project) {
 		super(project);
@@ -130,6 +135,17 @@ public class MappingsProviderImpl extends DependencyProvider implements Mappings
 
 	@Override
 	public void provide(DependencyInfo dependency, Consumer<Runnable> postPopulationScheduler) throws Exception {
+		try {
+			provideMappings(dependency, postPopulationScheduler);
+		} finally {
+			if (patchedProvider != null) {
+				// Do not keep the global Forge cache locked when providing failed half way
+				patchedProvider.releaseGlobalCache();
+			}
+		}
+	}
+
+	private void provideMappings(DependencyInfo dependency, Consumer<Runnable> postPopulationScheduler) throws Exception {
 		MinecraftProviderImpl minecraftProvider = getDependencyManager().getProvider(MinecraftProviderImpl.class);
 
 		getProject().getLogger().info(":setting up mappings (" + dependency.getDependency().getName() + " " + dependency.getResolvedVersion() + ")");
@@ -167,10 +183,10 @@ public class MappingsProviderImpl extends DependencyProvider implements Mappings
 		if (getExtension().shouldGenerateSrgTiny()) {
 			if (Files.notExists(tinyMappingsWithSrg) || isRefreshDeps()) {
 				// Merge tiny mappings with srg
-				SrgMerger.mergeSrg(getProject().getLogger(), getExtension().getMappingsProvider()::getMojmapSrgFileIfPossible, getRawSrgFile(), tinyMappings, tinyMappingsWithSrg, true, getExtension().isLegacyForge());
+				mappingTreeWithSrg = mergeSrg(tinyMappings, tinyMappingsWithSrg, getExtension().isLegacyForge());
+			} else {
+				mappingTreeWithSrg = readMappings(tinyMappingsWithSrg);
 			}
-
-			mappingTreeWithSrg = readMappings(tinyMappingsWithSrg);
 		}
 
 		if (Files.notExists(tinyMappingsJar) || isRefreshDeps()) {
@@ -194,18 +210,12 @@ public class MappingsProviderImpl extends DependencyProvider implements Mappings
 				throw new IllegalStateException("We have to generate srg tiny in a forge environment!");
 			}
 
-			if (Files.notExists(mixinTinyMappingsWithSrg) || isRefreshDeps()) {
-				List<String> lines = new ArrayList<>(Files.readAllLines(tinyMappingsWithSrg));
-				lines.set(0, lines.get(0).replace("intermediary", "yraidemretni").replace("srg", "intermediary"));
-				Files.deleteIfExists(mixinTinyMappingsWithSrg);
-				Files.write(mixinTinyMappingsWithSrg, lines);
-			}
-
-			if (Files.notExists(srgToNamedSrg) || isRefreshDeps()) {
-				SrgNamedWriter.writeTo(srgToNamedSrg, getMappingsWithSrg(), "srg", "named", getExtension().isLegacyForge());
+			if (Files.notExists(mixinTinyMappingsWithSrg) || Files.notExists(srgToNamedSrg) || isRefreshDeps()) {
+				writeSrgMappingVariants();
 			}
 		}
 
+		awaitMappingsWrites();
 		addDependency(getProject().getDependencies().module("loom.resolved:mappings:" + getMinecraftProvider().minecraftVersion() + "/" + getExtension().getMappingsProvider().mappingsIdentifier()), Constants.Configurations.MAPPINGS_FINAL);
 
 		LoomGradleExtension extension = getExtension();
@@ -230,6 +240,7 @@ public class MappingsProviderImpl extends DependencyProvider implements Mappings
 
 		if (extension.isForge()) {
 			patchedProvider.finishProvide();
+			patchedProvider.releaseGlobalCache();
 		}
 
 		if (processorManager.active() || (extension.isForge() && patchedProvider.usesProjectCache())) {
@@ -243,6 +254,24 @@ public class MappingsProviderImpl extends DependencyProvider implements Mappings
 		mappedProvider.provide(dependency, postPopulationScheduler);
 	}
 
+	/**
+	 * Writes the mixin mappings and the srg to named SRG mappings in a single pass over the mappings with srg.
+	 * The mixin mappings use srg names in the intermediary namespace.
+	 */
+	private void writeSrgMappingVariants() throws IOException {
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		MemoryMappingTree mappings = getMappingsWithSrg();
+		Map<String, String> mixinNamespaces = Map.of("intermediary", "yraidemretni", "srg", "intermediary");
+
+		try (Tiny2Writer mixinWriter = new Tiny2Writer(Files.newBufferedWriter(mixinTinyMappingsWithSrg, StandardCharsets.UTF_8), false);
+				Writer srgWriter = Files.newBufferedWriter(srgToNamedSrg, StandardCharsets.UTF_8)) {
+			MappingVisitor mixinVisitor = new NamespaceRenamingMappingVisitor(mixinWriter, mixinNamespaces);
+			mappings.accept(new SrgNamedWriter(mixinVisitor, srgWriter, mappings, "srg", "named", getExtension().isLegacyForge()));
+		}
+
+		getProject().getLogger().info(":wrote srg mapping variants in " + stopwatch.stop());
+	}
+
 	protected Path getRawSrgFile() throws IOException {
 		LoomGradleExtension extension = getExtension();
 
@@ -265,6 +294,37 @@ public class MappingsProviderImpl extends DependencyProvider implements Mappings
 	public void manipulateMappings(Path mappingsJar) throws IOException {
 	}
 
+	/**
+	 * Merges the given tiny mappings with srg, and schedules writing the result to disk.
+	 * The merged tree is returned directly so that it does not have to be parsed again.
+	 *
+	 * @param tiny   the tiny mappings to merge
+	 * @param out    the file to write the merged mappings to
+	 * @param legacy whether to treat any method as mapped, see {@link SrgMerger#mergeSrg}
+	 * @return the merged mapping tree, which must not be modified
+	 */
+	protected MemoryMappingTree mergeSrg(Path tiny, Path out, boolean legacy) throws IOException {
+		MemoryMappingTree tree = SrgMerger.mergeSrg(getProject().getLogger(), getExtension().getMappingsProvider()::getMojmapSrgFileIfPossible, getRawSrgFile(), tiny, true, legacy);
+		CompletableFuture<Void> write = SrgMerger.writeAsync(getProject().getLogger(), tree, out);
+		pendingMappingsWrites = CompletableFuture.allOf(pendingMappingsWrites, write);
+		return tree;
+	}
+
+	/**
+	 * Waits for the mapping files scheduled by {@link #mergeSrg(Path, Path, boolean)} to be written.
+	 */
+	protected void awaitMappingsWrites() throws IOException {
+		try {
+			pendingMappingsWrites.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+				throw uncheckedIOException.getCause();
+			}
+
+			throw e;
+		}
+	}
+
 	private String getMappingsClassifier(DependencyInfo dependency, boolean isV2) {
 		String[] depStringSplit = dependency.getDepString().split(":");
 
@@ -354,7 +414,7 @@ public class MappingsProviderImpl extends DependencyProvider implements Mappings
 		}
 
 		Path srgPath = getRawSrgFile();
-		TinyFile file = new MCPReader(intermediaryTinyPath, srgPath).read(mcpJar);
+		TinyFile file = new MCPReader(intermediaryTinyPath, srgPath, getMinecraftProvider().dir("mcp").toPath()).read(mcpJar);
 		TinyV2Writer.write(file, tinyMappings);
 	}
 
@@ -575,6 +635,11 @@ public class MappingsProviderImpl extends DependencyProvider implements Mappings
 		}
 	}
 
+	@Override
+	protected String getRefreshKey() {
+		return mappingsWorkingDir == null ? null : mappingsWorkingDir.toAbsolutePath().toString();
+	}
+
 	@Override
 	public String getTargetConfig() {
 		return Constants.Configurations.MAPPINGS;
@@ -584,7 +649,7 @@ public class MappingsProviderImpl extends DependencyProvider implements Mappings
 		if (intermediaryTiny == null) {
 			intermediaryTiny = getMinecraftProvider().file("intermediary-v2.tiny").toPath();
 
-			if (!Files.exists(intermediaryTiny) || (isRefreshDeps() && !hasRefreshed)) {
+			if (!Files.exists(intermediaryTiny) || (!hasRefreshed && isRefreshIntermediary())) {
 				hasRefreshed = true;
 
 				// Download and extract intermediary
@@ -603,6 +668,11 @@ public class MappingsProviderImpl extends DependencyProvider implements Mappings
 		return intermediaryTiny;
 	}
 
+	// The intermediary file is shared by every project using this Minecraft version, and can be needed before the mappings directory is known
+	private boolean isRefreshIntermediary() {
+		return LoomGradlePlugin.refreshDeps && SharedSetupService.get(getProject()).claimRefresh("intermediary:" + intermediaryTiny.toAbsolutePath());
+	}
+
 	private void generateDummyIntermediary(Logger logger, Path tinyV2) throws IOException {
 		Stopwatch stopwatch = Stopwatch.createStarted();
 		logger.lifecycle(":generating dummy intermediary");
@@ -26,8 +26,13 @@ package net.fabricmc.loom.configuration.providers.minecraft;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 public record ManifestVersion(List<Versions> versions, Map<String, String> latest) {
+	public Optional<Versions> getVersion(String id) {
+		return versions().stream().filter(versions -> versions.id.equalsIgnoreCase(id)).findFirst();
+	}
+
 	public static class Versions {
 		public String id, url, sha1;
 	}
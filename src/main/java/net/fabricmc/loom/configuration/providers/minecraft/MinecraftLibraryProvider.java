@@ -25,21 +25,38 @@
 package net.fabricmc.loom.configuration.providers.minecraft;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
 
 import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.configuration.SharedSetupService;
 import net.fabricmc.loom.configuration.providers.MinecraftProviderImpl;
+import net.fabricmc.loom.util.CacheStore;
 import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.DownloadUtil;
+import net.fabricmc.loom.util.HashedDownloadUtil;
+import net.fabricmc.loom.util.MirrorUtil;
+import net.fabricmc.loom.util.ThreadingUtils;
 
 public class MinecraftLibraryProvider {
 	public File MINECRAFT_LIBS;
 
-	public void provide(MinecraftProviderImpl minecraftProvider, Project project) {
+	public void provide(MinecraftProviderImpl minecraftProvider, Project project) throws IOException {
 		MinecraftVersionMeta versionInfo = minecraftProvider.getVersionInfo();
 
 		initFiles(project, minecraftProvider);
 
+		if (!project.getGradle().getStartParameter().isOffline()) {
+			SharedSetupService.get(project).runOnce("libraries:" + minecraftProvider.minecraftVersion(), () -> prefetch(versionInfo, project));
+		}
+
 		for (MinecraftVersionMeta.Library library : versionInfo.libraries()) {
 			if (library.isValidForOS() && !library.hasNatives() && library.artifact() != null) {
 				project.getDependencies().add(Constants.Configurations.MINECRAFT_DEPENDENCIES, library.name());
@@ -49,6 +66,93 @@ public class MinecraftLibraryProvider {
 
 	private void initFiles(Project project, MinecraftProviderImpl minecraftProvider) {
 		LoomGradleExtension extension = LoomGradleExtension.get(project);
-		MINECRAFT_LIBS = new File(extension.getFiles().getUserCache(), "libraries");
+		MINECRAFT_LIBS = extension.getFiles().getLibraryStore();
+	}
+
+	/**
+	 * Downloads every library and native of the version into the library store in parallel, so Gradle can resolve them
+	 * from the local repository instead of fetching them one configuration at a time.
+	 */
+	private void prefetch(MinecraftVersionMeta versionInfo, Project project) {
+		// Library download to the path of its module POM, or null for natives
+		Map<MinecraftVersionMeta.Download, String> downloads = new LinkedHashMap<>();
+
+		for (MinecraftVersionMeta.Library library : versionInfo.libraries()) {
+			if (!library.isValidForOS()) {
+				continue;
+			}
+
+			if (!library.hasNatives() && library.artifact() != null) {
+				downloads.putIfAbsent(library.artifact(), getPomPath(library.name()));
+			}
+
+			if (library.hasNativesForOS() && library.classifierForOS() != null) {
+				downloads.putIfAbsent(library.classifierForOS(), null);
+			}
+		}
+
+		String librariesBase = MirrorUtil.getLibrariesBase(project);
+		Logger logger = project.getLogger();
+
+		ThreadingUtils.run(downloads.entrySet(), entry -> {
+			MinecraftVersionMeta.Download download = entry.getKey();
+			File libraryFile = download.relativeFile(MINECRAFT_LIBS);
+			Path object = getObjectPath(download.sha1());
+
+			// An identical artifact may already be stored under another path, such as by a different Minecraft version
+			if (!libraryFile.exists() && Files.exists(object) && !link(object, libraryFile.toPath())) {
+				CacheStore.publish(libraryFile.toPath(), tempFile -> Files.copy(object, tempFile));
+			}
+
+			HashedDownloadUtil.downloadIfInvalid(new URL(librariesBase + download.path()), libraryFile, download.sha1(), logger, true);
+
+			synchronized (this) {
+				// Copies would double the disk usage, so without hard links nothing is shared between paths
+				if (!Files.exists(object)) {
+					link(libraryFile.toPath(), object);
+				}
+			}
+
+			String pomPath = entry.getValue();
+
+			if (pomPath != null) {
+				File pomFile = new File(MINECRAFT_LIBS, pomPath);
+
+				if (!pomFile.exists()) {
+					try {
+						DownloadUtil.downloadIfChanged(new URL(librariesBase + pomPath), pomFile, logger, true);
+					} catch (IOException e) {
+						// Without a POM the library is not served from the library store, Gradle downloads it from Mojang instead
+						logger.debug("Failed to download the POM for {}", download.path(), e);
+					}
+				}
+			}
+		});
+	}
+
+	private Path getObjectPath(String sha1) {
+		return MINECRAFT_LIBS.toPath().resolve(".objects").resolve(sha1.substring(0, 2)).resolve(sha1);
+	}
+
+	/**
+	 * Hard links the target to the source.
+	 *
+	 * @return false if the file system does not support hard links between the two paths
+	 */
+	private static boolean link(Path source, Path target) {
+		try {
+			CacheStore.publish(target, tempFile -> Files.createLink(tempFile, source));
+			return true;
+		} catch (IOException | UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	private static String getPomPath(String name) {
+		String[] parts = name.split(":");
+		String group = parts[0].replace('.', '/');
+		String artifact = parts[1];
+		String version = parts[2];
+		return String.format("%s/%s/%s/%s-%s.pom", group, artifact, version, artifact, version);
 	}
 }
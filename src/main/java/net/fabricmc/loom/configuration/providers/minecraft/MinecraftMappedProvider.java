@@ -28,7 +28,6 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -59,11 +58,10 @@ import net.fabricmc.loom.configuration.providers.MinecraftProviderImpl;
 import net.fabricmc.loom.configuration.providers.mappings.MappingsProviderImpl;
 import net.fabricmc.loom.configuration.providers.minecraft.tr.OutputRemappingHandler;
 import net.fabricmc.loom.configuration.sources.ForgeSourcesRemapper;
+import net.fabricmc.loom.util.CacheStore;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DownloadUtil;
-import net.fabricmc.loom.util.FileSystemUtil;
 import net.fabricmc.loom.util.OperatingSystem;
-import net.fabricmc.loom.util.ThreadingUtils;
 import net.fabricmc.loom.util.TinyRemapperHelper;
 import net.fabricmc.loom.util.srg.AtRemapper;
 import net.fabricmc.loom.util.srg.CoreModClassRemapper;
@@ -96,6 +94,36 @@ public class MinecraftMappedProvider extends DependencyProvider {
 			throw new RuntimeException("input merged jar not found");
 		}
 
+		// Other builds sharing the cache wait for the remap, then find the mapped jars present
+		try (CacheStore.Lock lock = CacheStore.lock(minecraftMappedJar.toPath())) {
+			remapIfNeeded();
+		}
+
+		if (!minecraftMappedJar.exists()) {
+			throw new RuntimeException("mapped jar not found");
+		}
+
+		addDependencies(dependency, postPopulationScheduler);
+
+		if (getExtension().isForgeAndNotOfficial()) {
+			getProject().getDependencies().add(Constants.Configurations.FORGE_NAMED,
+					getProject().getDependencies().module("net.minecraftforge-loom:forge-mapped:" + getMinecraftProvider().minecraftVersion() + "/" + getExtension().getMappingsProvider().mappingsIdentifier() + "/forge"));
+		}
+
+		if (getExtension().isForge()) {
+			getProject().afterEvaluate(project -> {
+				if (!OperatingSystem.isCIBuild()) {
+					try {
+						ForgeSourcesRemapper.addBaseForgeSources(project, getExtension().isForgeAndOfficial());
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+		}
+	}
+
+	private void remapIfNeeded() throws IOException {
 		boolean isForgeAtDirty = getExtension().isForge() && getExtension().getMappingsProvider().patchedProvider.isAtDirty();
 		boolean needToRemap = false;
 
@@ -153,55 +181,6 @@ public class MinecraftMappedProvider extends DependencyProvider {
 				throw new RuntimeException("Failed to remap minecraft", t);
 			}
 		}
-
-		if (!minecraftMappedJar.exists()) {
-			throw new RuntimeException("mapped jar not found");
-		}
-
-		addDependencies(dependency, postPopulationScheduler);
-
-		if (getExtension().isForgeAndNotOfficial()) {
-			getProject().getDependencies().add(Constants.Configurations.FORGE_NAMED,
-					getProject().getDependencies().module("net.minecraftforge-loom:forge-mapped:" + getMinecraftProvider().minecraftVersion() + "/" + getExtension().getMappingsProvider().mappingsIdentifier() + "/forge"));
-		}
-
-		if (getExtension().isForge()) {
-			getProject().afterEvaluate(project -> {
-				if (!OperatingSystem.isCIBuild()) {
-					try {
-						ForgeSourcesRemapper.addBaseForgeSources(project, getExtension().isForgeAndOfficial());
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				}
-			});
-		}
-	}
-
-	private byte[][] inputBytes(Path input) throws IOException {
-		List<byte[]> inputByteList = new ArrayList<>();
-
-		try (FileSystemUtil.Delegate inputFs = FileSystemUtil.getJarFileSystem(input, false)) {
-			ThreadingUtils.TaskCompleter taskCompleter = ThreadingUtils.taskCompleter();
-
-			for (Path path : (Iterable<? extends Path>) Files.walk(inputFs.get().getPath("/"))::iterator) {
-				if (Files.isRegularFile(path)) {
-					if (path.getFileName().toString().endsWith(".class")) {
-						taskCompleter.add(() -> {
-							byte[] bytes = Files.readAllBytes(path);
-
-							synchronized (inputByteList) {
-								inputByteList.add(bytes);
-							}
-						});
-					}
-				}
-			}
-
-			taskCompleter.complete();
-		}
-
-		return inputByteList.toArray(new byte[0][0]);
 	}
 
 	private void assetsOut(Path input, @Nullable Path assetsOut) throws IOException {
@@ -269,10 +248,10 @@ public class MinecraftMappedProvider extends DependencyProvider {
 		Set<String> classNames;
 
 		if (getExtension().isForge()) {
-			classNames = InnerClassRemapper.readClassNames(vanilla.input);
+			classNames = getExtension().getClassIndex(vanilla.input).getNestedClassNames();
 
 			if (forge != null) {
-				classNames.addAll(InnerClassRemapper.readClassNames(forge.input));
+				classNames.addAll(getExtension().getClassIndex(forge.input).getNestedClassNames());
 			}
 		} else {
 			classNames = null;
@@ -446,6 +425,11 @@ public class MinecraftMappedProvider extends DependencyProvider {
 		return new File(getExtension().getMappingsProvider().mappingsWorkingDir().toFile(), "minecraft-unpicked.jar");
 	}
 
+	@Override
+	protected String getRefreshKey() {
+		return minecraftMappedJar == null ? null : minecraftMappedJar.getAbsolutePath();
+	}
+
 	@Override
 	public String getTargetConfig() {
 		return Constants.Configurations.MINECRAFT_NAMED;
@@ -26,23 +26,49 @@ package net.fabricmc.loom.configuration.providers.minecraft;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import org.apache.commons.io.FileUtils;
 import org.gradle.api.GradleException;
 import org.gradle.api.Project;
+import org.jetbrains.annotations.Nullable;
 
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.LoomGradlePlugin;
+import net.fabricmc.loom.util.CacheStore;
+import net.fabricmc.loom.util.FileHashCache;
 import net.fabricmc.loom.util.HashedDownloadUtil;
 import net.fabricmc.loom.util.MirrorUtil;
-import net.fabricmc.loom.util.ZipUtils;
+import net.fabricmc.loom.util.ThreadingUtils;
 
 public class MinecraftNativesProvider {
+	private static final String MANIFEST_NAME = "natives.json";
+	private static final int MANIFEST_VERSION = 1;
+	private static final String STAGING_SUFFIX = ".extract";
+
 	private final Project project;
 	private final LoomGradleExtension extension;
 	private final File nativesDir;
@@ -53,7 +79,7 @@ public class MinecraftNativesProvider {
 		extension = LoomGradleExtension.get(project);
 
 		nativesDir = extension.getMinecraftProvider().nativesDir();
-		jarStore = extension.getFiles().getNativesJarStore();
+		jarStore = extension.getFiles().getLibraryStore();
 	}
 
 	public static void provide(Project project) throws IOException {
@@ -69,71 +95,232 @@ public class MinecraftNativesProvider {
 			return;
 		}
 
-		if (!LoomGradlePlugin.refreshDeps && !requiresExtract()) {
-			project.getLogger().info("Natives do no need extracting, skipping");
-			return;
+		// The natives directory is shared by every build using this Minecraft version
+		try (CacheStore.Lock lock = CacheStore.lock(nativesDir.toPath())) {
+			deleteStaleStaging();
+			extractNatives();
 		}
+	}
+
+	// Removes the staging directories left behind by builds that did not finish extracting
+	private void deleteStaleStaging() throws IOException {
+		File[] stale = nativesDir.getParentFile().listFiles((dir, name) -> name.startsWith(nativesDir.getName() + STAGING_SUFFIX));
 
-		extractNatives();
+		if (stale != null) {
+			for (File directory : stale) {
+				FileUtils.deleteDirectory(directory);
+			}
+		}
 	}
 
 	private void extractNatives() throws IOException {
 		boolean offline = project.getGradle().getStartParameter().isOffline();
+		Map<String, ExtractedLibrary> manifest = readManifest();
 
-		if (nativesDir.exists()) {
-			try {
-				FileUtils.deleteDirectory(nativesDir);
-			} catch (IOException e) {
-				throw new IOException("Failed to delete the natives directory, is the game running?", e);
+		if (manifest == null) {
+			// No (readable) manifest, so we cannot tell which files belong to which library. Start again from a clean directory.
+			if (nativesDir.exists()) {
+				try {
+					FileUtils.deleteDirectory(nativesDir);
+				} catch (IOException e) {
+					throw new IOException("Failed to delete the natives directory, is the game running?", e);
+				}
 			}
+
+			manifest = new HashMap<>();
 		}
 
 		nativesDir.mkdirs();
 
-		for (MinecraftVersionMeta.Download library : getNatives()) {
-			File libJarFile = library.relativeFile(jarStore);
+		List<MinecraftVersionMeta.Download> natives = getNatives();
+		Map<String, ExtractedLibrary> extracted = new ConcurrentHashMap<>();
+		List<MinecraftVersionMeta.Download> outdated = new ArrayList<>();
+
+		for (MinecraftVersionMeta.Download library : natives) {
+			ExtractedLibrary existing = manifest.get(library.path());
+
+			if (existing != null && existing.isUpToDate(library.sha1(), nativesDir)) {
+				extracted.put(library.path(), existing);
+			} else {
+				outdated.add(library);
+			}
+		}
+
+		if (outdated.isEmpty() && extracted.size() == manifest.size()) {
+			project.getLogger().info("Natives do no need extracting, skipping");
+			return;
+		}
+
+		// Remove the files of changed or no longer used libraries, unless an up-to-date library also provides them
+		Set<String> retained = extracted.values().stream()
+				.flatMap(library -> library.files().stream())
+				.collect(Collectors.toSet());
+
+		for (Map.Entry<String, ExtractedLibrary> entry : manifest.entrySet()) {
+			if (extracted.containsKey(entry.getKey())) {
+				continue;
+			}
+
+			for (String file : entry.getValue().files()) {
+				if (retained.contains(file)) {
+					continue;
+				}
 
-			if (!offline) {
-				HashedDownloadUtil.downloadIfInvalid(new URL(MirrorUtil.getLibrariesBase(project) + library.path()), libJarFile, library.sha1(), project.getLogger(), false);
+				try {
+					Files.deleteIfExists(nativesDir.toPath().resolve(file));
+				} catch (IOException e) {
+					throw new IOException("Failed to delete " + file + " from the natives directory, is the game running?", e);
+				}
 			}
+		}
+
+		project.getLogger().info(":extracting {} native libraries", outdated.size());
+
+		if (!offline) {
+			// Validate the already downloaded jars in parallel
+			FileHashCache.sha1All(outdated.stream().map(library -> library.relativeFile(jarStore)).toList());
+		}
+
+		// Unpacked in parallel next to the natives directory, so it never ends up on the library path, then moved into place in library order
+		Path staging = Files.createTempDirectory(nativesDir.toPath().getParent(), nativesDir.getName() + STAGING_SUFFIX);
+
+		try {
+			ThreadingUtils.run(outdated, library -> {
+				File libJarFile = library.relativeFile(jarStore);
+
+				if (!offline) {
+					HashedDownloadUtil.downloadIfInvalid(new URL(MirrorUtil.getLibrariesBase(project) + library.path()), libJarFile, library.sha1(), project.getLogger(), false);
+				}
+
+				if (!libJarFile.exists()) {
+					throw new GradleException("Native jar not found at " + libJarFile.getAbsolutePath());
+				}
+
+				Path libraryStaging = staging.resolve(Integer.toString(outdated.indexOf(library)));
+				extracted.put(library.path(), new ExtractedLibrary(library.sha1(), unpackNatives(libJarFile.toPath(), libraryStaging)));
+			});
+
+			// A file provided by several libraries always comes from the first one in the version's library list
+			Set<String> claimed = new HashSet<>();
+
+			for (MinecraftVersionMeta.Download library : natives) {
+				ExtractedLibrary extractedLibrary = extracted.get(library.path());
+				int index = outdated.indexOf(library);
 
-			if (!libJarFile.exists()) {
-				throw new GradleException("Native jar not found at " + libJarFile.getAbsolutePath());
+				for (String file : extractedLibrary.files()) {
+					if (claimed.add(file) && index >= 0) {
+						Path output = nativesDir.toPath().resolve(file);
+						Files.createDirectories(output.getParent());
+
+						try {
+							Files.move(staging.resolve(Integer.toString(index)).resolve(file), output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+						} catch (IOException e) {
+							throw new IOException("Failed to replace " + output + ", is the game running?", e);
+						}
+					}
+				}
 			}
+		} finally {
+			FileUtils.deleteDirectory(staging.toFile());
+		}
+
+		writeManifest(extracted);
+	}
+
+	/**
+	 * Extracts the native libraries from the given jar into the given directory, skipping directories and META-INF.
+	 *
+	 * @return the paths of the extracted files, relative to the given directory
+	 */
+	private static List<String> unpackNatives(Path jar, Path directory) throws IOException {
+		Path root = directory.toAbsolutePath().normalize();
+		List<String> files = new ArrayList<>();
+
+		try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+
+				if (entry.isDirectory() || entry.getName().startsWith("META-INF/")) {
+					continue;
+				}
 
-			ZipUtils.unpackAll(libJarFile.toPath(), nativesDir.toPath());
+				Path output = root.resolve(entry.getName()).normalize();
 
-			// Store a file containing the hash of the extracted natives, used on subsequent runs to skip extracting all the natives if they haven't changed
-			File libSha1File = new File(nativesDir, libJarFile.getName() + ".sha1");
-			FileUtils.writeStringToFile(libSha1File, library.sha1(), StandardCharsets.UTF_8);
+				if (!output.startsWith(root)) {
+					throw new IOException("Native jar " + jar + " contains an entry outside of the natives directory: " + entry.getName());
+				}
+
+				Files.createDirectories(output.getParent());
+
+				try (InputStream inputStream = zipFile.getInputStream(entry)) {
+					Files.copy(inputStream, output, StandardCopyOption.REPLACE_EXISTING);
+				}
+
+				files.add(root.relativize(output).toString().replace(File.separatorChar, '/'));
+			}
 		}
+
+		return files;
 	}
 
-	private boolean requiresExtract() {
-		List<MinecraftVersionMeta.Download> natives = getNatives();
+	@Nullable
+	private Map<String, ExtractedLibrary> readManifest() {
+		Path manifestPath = nativesDir.toPath().resolve(MANIFEST_NAME);
 
-		for (MinecraftVersionMeta.Download library : natives) {
-			File libJarFile = library.relativeFile(jarStore);
-			File libSha1File = new File(nativesDir, libJarFile.getName() + ".sha1");
+		if (!Files.exists(manifestPath)) {
+			return null;
+		}
+
+		try (Reader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+			JsonObject json = LoomGradlePlugin.GSON.fromJson(reader, JsonObject.class);
 
-			if (!libSha1File.exists()) {
-				return true;
+			if (json == null || !json.has("version") || json.get("version").getAsInt() != MANIFEST_VERSION) {
+				return null;
 			}
 
-			try {
-				String sha1 = FileUtils.readFileToString(libSha1File, StandardCharsets.UTF_8);
+			Map<String, ExtractedLibrary> manifest = new HashMap<>();
+
+			for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject("libraries").entrySet()) {
+				JsonObject library = entry.getValue().getAsJsonObject();
+				List<String> files = new ArrayList<>();
 
-				if (!sha1.equalsIgnoreCase(library.sha1())) {
-					return true;
+				for (JsonElement file : library.getAsJsonArray("files")) {
+					files.add(file.getAsString());
 				}
-			} catch (IOException e) {
-				project.getLogger().error("Failed to read " + libSha1File.getAbsolutePath(), e);
-				return true;
+
+				manifest.put(entry.getKey(), new ExtractedLibrary(library.get("sha1").getAsString(), files));
 			}
+
+			return manifest;
+		} catch (Exception e) {
+			project.getLogger().warn("Failed to read the natives manifest, re-extracting all natives", e);
+			return null;
 		}
+	}
+
+	private void writeManifest(Map<String, ExtractedLibrary> manifest) throws IOException {
+		JsonObject libraries = new JsonObject();
+
+		for (Map.Entry<String, ExtractedLibrary> entry : new TreeMap<>(manifest).entrySet()) {
+			JsonObject library = new JsonObject();
+			JsonArray files = new JsonArray();
+			entry.getValue().files().forEach(files::add);
+			library.addProperty("sha1", entry.getValue().sha1());
+			library.add("files", files);
+			libraries.add(entry.getKey(), library);
+		}
+
+		JsonObject json = new JsonObject();
+		json.addProperty("version", MANIFEST_VERSION);
+		json.add("libraries", libraries);
 
-		// All looks good, no need to re-extract
-		return false;
+		CacheStore.publish(nativesDir.toPath().resolve(MANIFEST_NAME), tempPath -> {
+			try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+				LoomGradlePlugin.GSON.toJson(json, writer);
+			}
+		});
 	}
 
 	private List<MinecraftVersionMeta.Download> getNatives() {
@@ -143,4 +330,20 @@ public class MinecraftNativesProvider {
 				.filter(Objects::nonNull)
 				.collect(Collectors.toList());
 	}
+
+	private record ExtractedLibrary(String sha1, List<String> files) {
+		private boolean isUpToDate(String expectedSha1, File nativesDir) {
+			if (!sha1.equalsIgnoreCase(expectedSha1)) {
+				return false;
+			}
+
+			for (String file : files) {
+				if (!new File(nativesDir, file).exists()) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
 }
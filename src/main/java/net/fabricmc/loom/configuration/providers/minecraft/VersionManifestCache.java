@@ -0,0 +1,174 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2018-2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.configuration.providers.minecraft;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import net.fabricmc.loom.LoomGradlePlugin;
+import net.fabricmc.loom.util.DownloadUtil;
+
+/**
+ * Keeps the version manifests and version metadata parsed for the lifetime of the Gradle daemon, so every project of a
+ * build shares a single copy. Manifests are revalidated with their ETag once they are older than the freshness TTL,
+ * in the background when the cached copy already lists the wanted version.
+ */
+public final class VersionManifestCache {
+	public static final String TTL_PROPERTY = "loom.versionManifest.ttlMinutes";
+	private static final long DEFAULT_TTL = TimeUnit.HOURS.toMillis(24);
+	// A manifest that does not list the wanted version is checked again at most this often
+	private static final long MISSING_VERSION_RECHECK = TimeUnit.MINUTES.toMillis(1);
+	private static final Logger LOGGER = Logging.getLogger(VersionManifestCache.class);
+
+	private static final Map<Path, Snapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+	private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+	private static final Set<Path> REFRESHING = ConcurrentHashMap.newKeySet();
+
+	private VersionManifestCache() {
+	}
+
+	/**
+	 * Returns the manifest at the given url, using the cached copy in the given file when possible.
+	 *
+	 * @param version the version that is looked up in the manifest
+	 */
+	public static ManifestVersion fetch(Project project, String url, File file, String version) throws IOException {
+		if (!LoomGradlePlugin.refreshDeps && file.exists()) {
+			ManifestVersion manifest = readOrNull(file);
+			long age = System.currentTimeMillis() - file.lastModified();
+
+			if (manifest != null && manifest.getVersion(version).isPresent()) {
+				if (age > getTtl(project)) {
+					refreshInBackground(url, file);
+				}
+
+				return manifest;
+			}
+
+			if (manifest != null && age < MISSING_VERSION_RECHECK) {
+				// Another project just checked, no need to ask again
+				return manifest;
+			}
+		}
+
+		refresh(url, file);
+		return read(file, ManifestVersion.class);
+	}
+
+	/**
+	 * Parses the given json file, reusing the previous result as long as the file is unchanged.
+	 */
+	public static <T> T read(File file, Class<T> type) throws IOException {
+		Path path = file.toPath().toAbsolutePath();
+
+		synchronized (lock(path)) {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			long lastModified = attributes.lastModifiedTime().toMillis();
+			Snapshot snapshot = SNAPSHOTS.get(path);
+
+			if (snapshot != null && snapshot.size() == attributes.size() && snapshot.lastModified() == lastModified && type.isInstance(snapshot.value())) {
+				return type.cast(snapshot.value());
+			}
+
+			T value;
+
+			try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+				value = LoomGradlePlugin.OBJECT_MAPPER.readValue(reader, type);
+			}
+
+			SNAPSHOTS.put(path, new Snapshot(attributes.size(), lastModified, value));
+			return value;
+		}
+	}
+
+	private static ManifestVersion readOrNull(File file) {
+		try {
+			return read(file, ManifestVersion.class);
+		} catch (IOException e) {
+			LOGGER.warn("Failed to read {}, downloading it again", file, e);
+			return null;
+		}
+	}
+
+	private static void refresh(String url, File file) throws IOException {
+		synchronized (lock(file.toPath().toAbsolutePath())) {
+			DownloadUtil.downloadIfChanged(new URL(url), file, LOGGER, true);
+			// The modification time marks when the manifest was last validated, whether or not it changed
+			file.setLastModified(System.currentTimeMillis());
+		}
+	}
+
+	private static void refreshInBackground(String url, File file) {
+		Path path = file.toPath().toAbsolutePath();
+
+		if (!REFRESHING.add(path)) {
+			return;
+		}
+
+		Thread thread = new Thread(() -> {
+			try {
+				refresh(url, file);
+			} catch (IOException e) {
+				LOGGER.info("Failed to refresh {}", file, e);
+			} finally {
+				REFRESHING.remove(path);
+			}
+		}, "Loom version manifest refresh");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static long getTtl(Project project) {
+		Object property = project.findProperty(TTL_PROPERTY);
+
+		if (property == null) {
+			return DEFAULT_TTL;
+		}
+
+		return TimeUnit.MINUTES.toMillis(Long.parseLong(Objects.toString(property)));
+	}
+
+	private static Object lock(Path path) {
+		return LOCKS.computeIfAbsent(path, p -> new Object());
+	}
+
+	private record Snapshot(long size, long lastModified, Object value) {
+	}
+}
@@ -24,25 +24,25 @@
 
 package net.fabricmc.loom.configuration.sources;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.io.UncheckedIOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import org.apache.commons.io.output.NullOutputStream;
 import org.cadixdev.lorenz.MappingSet;
@@ -59,10 +59,9 @@ import net.fabricmc.loom.task.GenerateSourcesTask;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DeletingFileVisitor;
 import net.fabricmc.loom.util.FileSystemUtil;
+import net.fabricmc.loom.util.ShardedMercury;
 import net.fabricmc.loom.util.SourceRemapper;
-import net.fabricmc.loom.util.ThreadingUtils;
 import net.fabricmc.loom.util.TinyRemapperHelper;
-import net.fabricmc.loom.util.ZipUtils;
 import net.fabricmc.lorenztiny.TinyMappingsReader;
 
 public class ForgeSourcesRemapper {
@@ -74,31 +73,28 @@ public class ForgeSourcesRemapper {
 		}
 	}
 
+	/**
+	 * Remaps the Forge sources and adds them to a sources jar.
+	 *
+	 * <p>The sources are extracted once into a temporary directory, as Mercury can only parse sources from
+	 * the default file system, and Mercury writes the remapped sources straight into the sources jar.
+	 */
 	public static void addForgeSources(Project project, Path sourcesJar) throws IOException {
-		try (FileSystemUtil.Delegate delegate = FileSystemUtil.getJarFileSystem(sourcesJar, true)) {
-			ThreadingUtils.TaskCompleter taskCompleter = ThreadingUtils.taskCompleter();
-
-			provideForgeSources(project, (path, bytes) -> {
-				Path fsPath = delegate.get().getPath(path);
-
-				if (fsPath.getParent() != null) {
-					try {
-						Files.createDirectories(fsPath.getParent());
-					} catch (IOException e) {
-						throw new UncheckedIOException(e);
-					}
-				}
+		Path sourcesDir = Files.createTempDirectory("loom-forge-sources");
 
-				taskCompleter.add(() -> {
-					Files.write(fsPath, bytes, StandardOpenOption.CREATE);
-				});
-			});
+		try {
+			int sourceCount = extractSources(project, sourcesDir);
+			project.getLogger().lifecycle(":extracted {} forge source classes", sourceCount);
 
-			taskCompleter.complete();
+			try (FileSystemUtil.Delegate delegate = FileSystemUtil.getJarFileSystem(sourcesJar, true)) {
+				remapSources(project, sourcesDir, delegate.get().getPath("/"));
+			}
+		} finally {
+			Files.walkFileTree(sourcesDir, new DeletingFileVisitor());
 		}
 	}
 
-	public static void provideForgeSources(Project project, BiConsumer<String, byte[]> consumer) throws IOException {
+	private static int extractSources(Project project, Path sourcesDir) throws IOException {
 		List<Path> forgeInstallerSources = new ArrayList<>();
 
 		for (ResolvedArtifact artifact : project.getConfigurations().getByName(Constants.Configurations.FORGE_INSTALLER).getResolvedConfiguration().getResolvedArtifacts()) {
@@ -110,110 +106,110 @@ public class ForgeSourcesRemapper {
 		}
 
 		LoomGradleExtension extension = LoomGradleExtension.get(project);
-		Path legacySourcesZip = null;
+		project.getLogger().lifecycle(":found {} forge source jars", forgeInstallerSources.size() + (extension.isLegacyForge() ? 1 : 0));
+		int sourceCount = 0;
+
+		for (Path path : forgeInstallerSources) {
+			try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+				sourceCount += extractSources(zis, sourcesDir);
+			}
+		}
 
 		if (extension.isLegacyForge()) {
+			// Legacy userdev jars ship their sources as a zip inside the jar, stream it without unpacking it first
 			Path userdevJar = extension.getForgeUserdevProvider().getUserdevJar().toPath();
-			byte[] sourcesZip = ZipUtils.unpack(userdevJar, "sources.zip");
 
-			legacySourcesZip = Files.createTempFile("sources", ".zip");
-			legacySourcesZip.toFile().deleteOnExit();
-			Files.write(legacySourcesZip, sourcesZip, StandardOpenOption.TRUNCATE_EXISTING);
-			forgeInstallerSources.add(legacySourcesZip);
+			try (FileSystemUtil.Delegate userdev = FileSystemUtil.getJarFileSystem(userdevJar, false);
+					ZipInputStream zis = new ZipInputStream(new BufferedInputStream(Files.newInputStream(userdev.get().getPath("sources.zip"))))) {
+				sourceCount += extractSources(zis, sourcesDir);
+			}
 		}
 
-		project.getLogger().lifecycle(":found {} forge source jars", forgeInstallerSources.size());
-		Map<String, byte[]> forgeSources = extractSources(forgeInstallerSources);
-		project.getLogger().lifecycle(":extracted {} forge source classes", forgeSources.size());
-		remapSources(project, forgeSources);
-		forgeSources.forEach(consumer);
-
-		if (legacySourcesZip != null) {
-			Files.delete(legacySourcesZip);
-		}
+		return sourceCount;
 	}
 
-	private static void remapSources(Project project, Map<String, byte[]> sources) throws IOException {
-		File tmpInput = File.createTempFile("tmpInputForgeSources", null);
-		tmpInput.delete();
-		tmpInput.deleteOnExit();
-		File tmpOutput = File.createTempFile("tmpOutputForgeSources", null);
-		tmpOutput.delete();
-		tmpOutput.deleteOnExit();
-
-		try (FileSystemUtil.Delegate delegate = FileSystemUtil.getJarFileSystem(tmpInput, true)) {
-			ThreadingUtils.TaskCompleter taskCompleter = ThreadingUtils.taskCompleter();
+	private static int extractSources(ZipInputStream zis, Path sourcesDir) throws IOException {
+		int sourceCount = 0;
+		ZipEntry entry;
 
-			for (Map.Entry<String, byte[]> entry : sources.entrySet()) {
-				Path path = delegate.get().getPath(entry.getKey());
+		while ((entry = zis.getNextEntry()) != null) {
+			if (entry.isDirectory() || !entry.getName().endsWith(".java")) {
+				continue;
+			}
 
-				if (path.getParent() != null) {
-					Files.createDirectories(path.getParent());
-				}
+			Path path = sourcesDir.resolve(entry.getName()).normalize();
 
-				taskCompleter.add(() -> {
-					Files.write(path, entry.getValue(), StandardOpenOption.CREATE);
-				});
+			if (!path.startsWith(sourcesDir)) {
+				throw new IOException("Forge source entry " + entry.getName() + " is outside of the sources root");
 			}
 
-			taskCompleter.complete();
+			Files.createDirectories(path.getParent());
+			Files.copy(zis, path, StandardCopyOption.REPLACE_EXISTING);
+			sourceCount++;
 		}
 
+		return sourceCount;
+	}
+
+	private static void remapSources(Project project, Path sourcesDir, Path outputRoot) throws IOException {
 		PrintStream out = System.out;
 		PrintStream err = System.err;
+		boolean silence = project.getGradle().getStartParameter().getShowStacktrace() == ShowStacktrace.INTERNAL_EXCEPTIONS && project.getGradle().getStartParameter().getLogLevel().compareTo(LogLevel.LIFECYCLE) >= 0;
 
-		if (project.getGradle().getStartParameter().getShowStacktrace() == ShowStacktrace.INTERNAL_EXCEPTIONS && project.getGradle().getStartParameter().getLogLevel().compareTo(LogLevel.LIFECYCLE) >= 0) {
+		if (silence) {
 			System.setOut(new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM));
 			System.setErr(new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM));
 		}
 
-		remapForgeSourcesInner(project, tmpInput.toPath(), tmpOutput.toPath());
-
-		if (project.getGradle().getStartParameter().getShowStacktrace() == ShowStacktrace.INTERNAL_EXCEPTIONS && project.getGradle().getStartParameter().getLogLevel().compareTo(LogLevel.LIFECYCLE) >= 0) {
-			System.setOut(out);
-			System.setErr(err);
+		try {
+			MappingSet mappings = createMappings(project);
+			Mercury mercury = createMercury(project, mappings);
+			ShardedMercury.rewrite(project, mercury, mappings, sourcesDir, outputRoot);
+			fixupLineNumbers(sourcesDir, outputRoot);
+		} catch (Exception e) {
+			project.getLogger().warn("Could not remap " + sourcesDir + " fully!", e);
+		} finally {
+			if (silence) {
+				System.setOut(out);
+				System.setErr(err);
+			}
 		}
 
-		tmpInput.delete();
-		int[] failedToRemap = {0};
-
-		try (FileSystemUtil.Delegate delegate = FileSystemUtil.getJarFileSystem(tmpOutput, false)) {
-			ThreadingUtils.TaskCompleter taskCompleter = ThreadingUtils.taskCompleter();
+		int failedToRemap = 0;
 
-			for (Map.Entry<String, byte[]> entry : new HashSet<>(sources.entrySet())) {
-				taskCompleter.add(() -> {
-					Path path = delegate.get().getPath(entry.getKey());
+		try (Stream<Path> srcPaths = Files.walk(sourcesDir)) {
+			for (Path srcPath : (Iterable<? extends Path>) srcPaths::iterator) {
+				if (Files.isRegularFile(srcPath)) {
+					String name = sourcesDir.relativize(srcPath).toString().replace(File.separatorChar, '/');
 
-					if (Files.exists(path)) {
-						sources.put(entry.getKey(), Files.readAllBytes(path));
-					} else {
-						sources.remove(entry.getKey());
-						project.getLogger().error("Failed to remap sources for " + entry.getKey());
-						failedToRemap[0]++;
+					if (Files.notExists(outputRoot.resolve(name))) {
+						project.getLogger().error("Failed to remap sources for /" + name);
+						failedToRemap++;
 					}
-				});
+				}
 			}
-
-			taskCompleter.complete();
 		}
 
-		tmpOutput.delete();
-
-		if (failedToRemap[0] > 0) {
-			project.getLogger().error("Failed to remap {} forge sources", failedToRemap[0]);
+		if (failedToRemap > 0) {
+			project.getLogger().error("Failed to remap {} forge sources", failedToRemap);
 		}
 	}
 
-	private static void remapForgeSourcesInner(Project project, Path tmpInput, Path tmpOutput) throws IOException {
+	private static MappingSet createMappings(Project project) throws IOException {
 		LoomGradleExtension extension = LoomGradleExtension.get(project);
-		Mercury mercury = SourceRemapper.createMercuryWithClassPath(project, false);
-
 		MappingSet mappings = new TinyMappingsReader(extension.getMappingsProvider().getMappingsWithSrg(), "srg", "named").read();
 
 		for (Map.Entry<String, String> entry : TinyRemapperHelper.JSR_TO_JETBRAINS.entrySet()) {
 			mappings.getOrCreateClassMapping(entry.getKey()).setDeobfuscatedName(entry.getValue());
 		}
 
+		return mappings;
+	}
+
+	private static Mercury createMercury(Project project, MappingSet mappings) {
+		LoomGradleExtension extension = LoomGradleExtension.get(project);
+		Mercury mercury = SourceRemapper.createMercuryWithClassPath(project, false);
+
 		Set<File> files = project.getConfigurations()
 				.detachedConfiguration(project.getDependencies().create(Constants.Dependencies.JETBRAINS_ANNOTATIONS + Constants.Dependencies.Versions.JETBRAINS_ANNOTATIONS))
 				.resolve();
@@ -237,46 +233,7 @@ public class ForgeSourcesRemapper {
 		mercury.getClassPath().addAll(newClassPath);
 
 		mercury.getProcessors().add(MercuryRemapper.create(mappings));
-		boolean isSrcTmp = false;
-
-		if (!Files.isDirectory(tmpInput)) {
-			Path tmpInput1 = tmpInput;
-			// create tmp directory
-			isSrcTmp = true;
-			tmpInput = Files.createTempDirectory("fabric-loom-src");
-			ZipUtils.unpackAll(tmpInput1, tmpInput);
-		}
-
-		try (FileSystemUtil.Delegate outputFs = FileSystemUtil.getJarFileSystem(tmpOutput, true)) {
-			Path outputFsRoot = outputFs.get().getPath("/");
-			mercury.rewrite(tmpInput, outputFsRoot);
-			fixupLineNumbers(tmpInput, outputFsRoot);
-		} catch (Exception e) {
-			project.getLogger().warn("Could not remap " + tmpInput + " fully!", e);
-		}
-
-		if (isSrcTmp) {
-			Files.walkFileTree(tmpInput, new DeletingFileVisitor());
-		}
-	}
-
-	private static Map<String, byte[]> extractSources(List<Path> forgeInstallerSources) throws IOException {
-		Map<String, byte[]> sources = new ConcurrentHashMap<>();
-		ThreadingUtils.TaskCompleter taskCompleter = ThreadingUtils.taskCompleter();
-
-		for (Path path : forgeInstallerSources) {
-			FileSystemUtil.Delegate system = FileSystemUtil.getJarFileSystem(path, false);
-			taskCompleter.onComplete(stopwatch -> system.close());
-
-			for (Path filePath : (Iterable<? extends Path>) Files.walk(system.get().getPath("/"))::iterator) {
-				if (Files.isRegularFile(filePath) && filePath.getFileName().toString().endsWith(".java")) {
-					taskCompleter.add(() -> sources.put(filePath.toString(), Files.readAllBytes(filePath)));
-				}
-			}
-		}
-
-		taskCompleter.complete();
-		return sources;
+		return mercury;
 	}
 
 	/**
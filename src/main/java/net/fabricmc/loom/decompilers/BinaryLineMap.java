@@ -0,0 +1,124 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.decompilers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * A compact binary line map, an alternative to the text format that avoids formatting and parsing numbers.
+ *
+ * <p>The file starts with {@link #MAGIC} and a version, followed by one record per class: the class name,
+ * the highest source and destination lines, and the source/destination line pairs.
+ */
+public final class BinaryLineMap {
+	public static final int MAGIC = 0x4C4D4150; // LMAP
+	private static final int VERSION = 1;
+
+	private BinaryLineMap() {
+	}
+
+	public static void writeHeader(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.flush();
+	}
+
+	/**
+	 * Encodes the record of one class.
+	 *
+	 * @param className the internal name of the class
+	 * @param mapping   the source and destination lines, interleaved
+	 * @return the encoded record
+	 */
+	public static byte[] encode(String className, int[] mapping) {
+		int maxLine = 0;
+		int maxLineDest = 0;
+
+		for (int i = 0; i < mapping.length; i += 2) {
+			maxLine = Math.max(maxLine, mapping[i]);
+			maxLineDest = Math.max(maxLineDest, mapping[i + 1]);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(className.length() + 16 + mapping.length * 4);
+
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeUTF(className);
+			out.writeInt(maxLine);
+			out.writeInt(maxLineDest);
+			out.writeInt(mapping.length / 2);
+
+			for (int line : mapping) {
+				out.writeInt(line);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads a binary line map, the magic having already been consumed.
+	 */
+	static void read(InputStream in, Visitor visitor) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		int version = data.readInt();
+
+		if (version != VERSION) {
+			throw new IOException("Unsupported binary line map version " + version);
+		}
+
+		while (true) {
+			String className;
+
+			try {
+				className = data.readUTF();
+			} catch (EOFException e) {
+				return;
+			}
+
+			visitor.visitClass(className, data.readInt(), data.readInt());
+			int pairs = data.readInt();
+
+			for (int i = 0; i < pairs; i++) {
+				visitor.visitLine(data.readInt(), data.readInt());
+			}
+		}
+	}
+
+	interface Visitor {
+		void visitClass(String className, int maxLine, int maxLineDest);
+
+		void visitLine(int line, int lineDest);
+	}
+}
@@ -0,0 +1,286 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.decompilers;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.fabricmc.loom.api.mappings.layered.MappingsNamespace;
+import net.fabricmc.loom.util.CacheStore;
+import net.fabricmc.loom.util.FileHashCache;
+import net.fabricmc.mappingio.MappingReader;
+import net.fabricmc.mappingio.adapter.MappingSourceNsSwitch;
+import net.fabricmc.mappingio.tree.MappingTree;
+import net.fabricmc.mappingio.tree.MemoryMappingTree;
+
+/**
+ * The comments of a mappings file, keyed by named class, member name and descriptor.
+ *
+ * <p>Decompilers only need the comments, so instead of reading the whole multi-namespace mappings
+ * into a tree, they read this index. It is stored next to the mappings file it was created from,
+ * in a compact binary file that records the hash of those mappings.
+ */
+public final class JavadocIndex {
+	private static final int MAGIC = 0x4C4A4458; // LJDX
+	private static final int VERSION = 2;
+
+	private final Map<String, ClassDocs> classes;
+
+	private JavadocIndex(Map<String, ClassDocs> classes) {
+		this.classes = classes;
+	}
+
+	/**
+	 * Gets the index of a mappings file, reading it from next to the mappings when it was created from
+	 * mappings with the same hash, or creating and storing it there otherwise.
+	 *
+	 * @param mappings a tiny mappings file with a named namespace
+	 * @return the index
+	 */
+	public static JavadocIndex forMappings(Path mappings) {
+		Path indexFile = mappings.resolveSibling(mappings.getFileName() + ".javadoc");
+
+		try {
+			// Modification times can't be trusted, mappings are copied around and restored from caches
+			String hash = FileHashCache.sha256(mappings.toFile()).toString();
+
+			if (Files.exists(indexFile)) {
+				JavadocIndex index = read(indexFile, hash);
+
+				if (index != null) {
+					return index;
+				}
+			}
+
+			JavadocIndex index = create(mappings);
+			index.write(indexFile, hash);
+			return index;
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to read mappings", e);
+		}
+	}
+
+	private static JavadocIndex create(Path mappings) throws IOException {
+		MemoryMappingTree mappingTree = new MemoryMappingTree();
+
+		try (BufferedReader reader = Files.newBufferedReader(mappings)) {
+			MappingReader.read(reader, new MappingSourceNsSwitch(mappingTree, MappingsNamespace.NAMED.toString()));
+		}
+
+		Map<String, ClassDocs> classes = new HashMap<>();
+
+		for (MappingTree.ClassMapping classMapping : mappingTree.getClasses()) {
+			Map<String, String> fields = new HashMap<>();
+			Map<String, MethodDocs> methods = new HashMap<>();
+
+			for (MappingTree.FieldMapping field : classMapping.getFields()) {
+				if (field.getComment() != null) {
+					fields.put(memberKey(field.getSrcName(), field.getSrcDesc()), field.getComment());
+				}
+			}
+
+			for (MappingTree.MethodMapping method : classMapping.getMethods()) {
+				List<ParamDoc> params = new ArrayList<>();
+
+				for (MappingTree.MethodArgMapping arg : method.getArgs()) {
+					if (arg.getComment() != null) {
+						params.add(new ParamDoc(arg.getSrcName(), arg.getComment()));
+					}
+				}
+
+				if (method.getComment() != null || !params.isEmpty()) {
+					methods.put(memberKey(method.getSrcName(), method.getSrcDesc()), new MethodDocs(method.getComment(), List.copyOf(params)));
+				}
+			}
+
+			if (classMapping.getComment() != null || !fields.isEmpty() || !methods.isEmpty()) {
+				classes.put(classMapping.getSrcName(), new ClassDocs(classMapping.getComment(), fields, methods));
+			}
+		}
+
+		return new JavadocIndex(classes);
+	}
+
+	@Nullable
+	private static JavadocIndex read(Path path, String hash) {
+		try {
+			// Read onto the heap rather than mapping the file, a mapping would keep the file locked on Windows
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !hash.equals(readString(buffer))) {
+				return null;
+			}
+
+			int classCount = readCount(buffer);
+			Map<String, ClassDocs> classes = new HashMap<>(classCount * 2);
+
+			for (int i = 0; i < classCount; i++) {
+				String name = readString(buffer);
+				String comment = readString(buffer);
+				int fieldCount = readCount(buffer);
+				Map<String, String> fields = new HashMap<>(fieldCount * 2);
+
+				for (int j = 0; j < fieldCount; j++) {
+					fields.put(readString(buffer), readString(buffer));
+				}
+
+				int methodCount = readCount(buffer);
+				Map<String, MethodDocs> methods = new HashMap<>(methodCount * 2);
+
+				for (int j = 0; j < methodCount; j++) {
+					String key = readString(buffer);
+					String methodComment = readString(buffer);
+					ParamDoc[] params = new ParamDoc[readCount(buffer)];
+
+					for (int k = 0; k < params.length; k++) {
+						params[k] = new ParamDoc(readString(buffer), readString(buffer));
+					}
+
+					methods.put(key, new MethodDocs(methodComment, List.of(params)));
+				}
+
+				classes.put(name, new ClassDocs(comment, fields, methods));
+			}
+
+			return new JavadocIndex(classes);
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+			// A broken index is simply created again
+			return null;
+		}
+	}
+
+	// Every counted item takes at least one byte, so a larger count can only come from a broken file
+	private static int readCount(ByteBuffer buffer) {
+		int count = buffer.getInt();
+
+		if (count < 0 || count > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+
+		return count;
+	}
+
+	@Nullable
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+
+		if (length < 0) {
+			return null;
+		} else if (length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void write(Path path, String hash) throws IOException {
+		CacheStore.publish(path, temp -> {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, hash);
+				out.writeInt(classes.size());
+
+				for (Map.Entry<String, ClassDocs> classEntry : classes.entrySet()) {
+					ClassDocs classDocs = classEntry.getValue();
+					writeString(out, classEntry.getKey());
+					writeString(out, classDocs.comment());
+					out.writeInt(classDocs.fields().size());
+
+					for (Map.Entry<String, String> field : classDocs.fields().entrySet()) {
+						writeString(out, field.getKey());
+						writeString(out, field.getValue());
+					}
+
+					out.writeInt(classDocs.methods().size());
+
+					for (Map.Entry<String, MethodDocs> method : classDocs.methods().entrySet()) {
+						writeString(out, method.getKey());
+						writeString(out, method.getValue().comment());
+						out.writeInt(method.getValue().params().size());
+
+						for (ParamDoc param : method.getValue().params()) {
+							writeString(out, param.name());
+							writeString(out, param.comment());
+						}
+					}
+				}
+			}
+		});
+	}
+
+	private static void writeString(DataOutputStream out, @Nullable String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String memberKey(String name, String descriptor) {
+		return name + ":" + descriptor;
+	}
+
+	@Nullable
+	public ClassDocs getClassDocs(String name) {
+		return classes.get(name);
+	}
+
+	public record ClassDocs(@Nullable String comment, Map<String, String> fields, Map<String, MethodDocs> methods) {
+		@Nullable
+		public String getFieldComment(String name, String descriptor) {
+			return fields.get(memberKey(name, descriptor));
+		}
+
+		@Nullable
+		public MethodDocs getMethod(String name, String descriptor) {
+			return methods.get(memberKey(name, descriptor));
+		}
+	}
+
+	public record MethodDocs(@Nullable String comment, List<ParamDoc> params) {
+	}
+
+	public record ParamDoc(String name, String comment) {
+	}
+}
@@ -26,11 +26,15 @@ package net.fabricmc.loom.decompilers;
 
 import static java.text.MessageFormat.format;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -56,34 +60,64 @@ public class LineNumberRemapper {
 	private final Map<String, RClass> lineMap = new HashMap<>();
 
 	public void readMappings(File lineMappings) {
-		try (BufferedReader reader = new BufferedReader(new FileReader(lineMappings))) {
-			RClass clazz = null;
-			String line = null;
-			int i = 0;
-
-			try {
-				while ((line = reader.readLine()) != null) {
-					if (line.isEmpty()) {
-						continue;
-					}
+		try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(lineMappings))) {
+			in.mark(4);
+			byte[] magic = in.readNBytes(4);
+
+			if (magic.length == 4 && ByteBuffer.wrap(magic).getInt() == BinaryLineMap.MAGIC) {
+				readBinaryMappings(in);
+			} else {
+				in.reset();
+				readTextMappings(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Exception reading LineMappings file.", e);
+		}
+	}
 
-					String[] segs = line.trim().split("\t");
+	private void readBinaryMappings(InputStream in) throws IOException {
+		BinaryLineMap.read(in, new BinaryLineMap.Visitor() {
+			private RClass clazz;
 
-					if (line.charAt(0) != '\t') {
-						clazz = lineMap.computeIfAbsent(segs[0], RClass::new);
-						clazz.maxLine = Integer.parseInt(segs[1]);
-						clazz.maxLineDest = Integer.parseInt(segs[2]);
-					} else {
-						clazz.lineMap.put(Integer.parseInt(segs[0]), Integer.parseInt(segs[1]));
-					}
+			@Override
+			public void visitClass(String className, int maxLine, int maxLineDest) {
+				clazz = lineMap.computeIfAbsent(className, RClass::new);
+				clazz.maxLine = maxLine;
+				clazz.maxLineDest = maxLineDest;
+			}
+
+			@Override
+			public void visitLine(int line, int lineDest) {
+				clazz.lineMap.put(line, lineDest);
+			}
+		});
+	}
+
+	private void readTextMappings(BufferedReader reader) throws IOException {
+		RClass clazz = null;
+		String line = null;
+		int i = 0;
 
-					i++;
+		try {
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
 				}
-			} catch (Exception e) {
-				throw new RuntimeException(format("Exception reading mapping line @{0}: {1}", i, line), e);
+
+				String[] segs = line.trim().split("\t");
+
+				if (line.charAt(0) != '\t') {
+					clazz = lineMap.computeIfAbsent(segs[0], RClass::new);
+					clazz.maxLine = Integer.parseInt(segs[1]);
+					clazz.maxLineDest = Integer.parseInt(segs[2]);
+				} else {
+					clazz.lineMap.put(Integer.parseInt(segs[0]), Integer.parseInt(segs[1]));
+				}
+
+				i++;
 			}
-		} catch (IOException e) {
-			throw new RuntimeException("Exception reading LineMappings file.", e);
+		} catch (Exception e) {
+			throw new RuntimeException(format("Exception reading mapping line @{0}: {1}", i, line), e);
 		}
 	}
 
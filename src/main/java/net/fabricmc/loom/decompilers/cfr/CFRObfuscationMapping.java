@@ -24,13 +24,9 @@
 
 package net.fabricmc.loom.decompilers.cfr;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -45,17 +41,13 @@ import org.benf.cfr.reader.mapping.NullMapping;
 import org.benf.cfr.reader.util.output.DelegatingDumper;
 import org.benf.cfr.reader.util.output.Dumper;
 
-import net.fabricmc.loom.api.mappings.layered.MappingsNamespace;
-import net.fabricmc.mappingio.MappingReader;
-import net.fabricmc.mappingio.adapter.MappingSourceNsSwitch;
-import net.fabricmc.mappingio.tree.MappingTree;
-import net.fabricmc.mappingio.tree.MemoryMappingTree;
+import net.fabricmc.loom.decompilers.JavadocIndex;
 
 public class CFRObfuscationMapping extends NullMapping {
-	private final MappingTree mappingTree;
+	private final JavadocIndex javadocIndex;
 
 	public CFRObfuscationMapping(Path mappings) {
-		mappingTree = readMappings(mappings);
+		javadocIndex = JavadocIndex.forMappings(mappings);
 	}
 
 	@Override
@@ -63,18 +55,6 @@ public class CFRObfuscationMapping extends NullMapping {
 		return new JavadocProvidingDumper(d);
 	}
 
-	private static MappingTree readMappings(Path input) {
-		try (BufferedReader reader = Files.newBufferedReader(input)) {
-			MemoryMappingTree mappingTree = new MemoryMappingTree();
-			MappingSourceNsSwitch nsSwitch = new MappingSourceNsSwitch(mappingTree, MappingsNamespace.NAMED.toString());
-			MappingReader.read(reader, nsSwitch);
-
-			return mappingTree;
-		} catch (IOException e) {
-			throw new RuntimeException("Failed to read mappings", e);
-		}
-	}
-
 	private class JavadocProvidingDumper extends DelegatingDumper {
 		JavadocProvidingDumper(Dumper delegate) {
 			super(delegate);
@@ -82,9 +62,9 @@ public class CFRObfuscationMapping extends NullMapping {
 
 		@Override
 		public Dumper dumpClassDoc(JavaTypeInstance owner) {
-			MappingTree.ClassMapping mapping = getClassMapping(owner);
+			JavadocIndex.ClassDocs classDocs = getClassDocs(owner);
 
-			if (mapping == null) {
+			if (classDocs == null) {
 				return this;
 			}
 
@@ -98,21 +78,15 @@ public class CFRObfuscationMapping extends NullMapping {
 						continue;
 					}
 
-					MappingTree.FieldMapping fieldMapping = mapping.getField(field.getFieldName(), field.getField().getDescriptor());
-
-					if (fieldMapping == null) {
-						continue;
-					}
-
-					String comment = fieldMapping.getComment();
+					String comment = classDocs.getFieldComment(field.getFieldName(), field.getField().getDescriptor());
 
 					if (comment != null) {
-						recordComponentDocs.add(String.format("@param %s %s", fieldMapping.getSrcName(), comment));
+						recordComponentDocs.add(String.format("@param %s %s", field.getFieldName(), comment));
 					}
 				}
 			}
 
-			String comment = mapping.getComment();
+			String comment = classDocs.comment();
 
 			if (comment != null || !recordComponentDocs.isEmpty()) {
 				print("/**").newln();
@@ -143,31 +117,26 @@ public class CFRObfuscationMapping extends NullMapping {
 
 		@Override
 		public Dumper dumpMethodDoc(MethodPrototype method) {
-			MappingTree.ClassMapping classMapping = getClassMapping(method.getOwner());
+			JavadocIndex.ClassDocs classDocs = getClassDocs(method.getOwner());
 
-			if (classMapping == null) {
+			if (classDocs == null) {
 				return this;
 			}
 
 			List<String> lines = new ArrayList<>();
-			MappingTree.MethodMapping mapping = classMapping.getMethod(method.getName(), method.getOriginalDescriptor());
+			JavadocIndex.MethodDocs methodDocs = classDocs.getMethod(method.getName(), method.getOriginalDescriptor());
 
-			if (mapping != null) {
-				String comment = mapping.getComment();
+			if (methodDocs != null) {
+				String comment = methodDocs.comment();
 
 				if (comment != null) {
 					lines.addAll(Arrays.asList(comment.split("\\R")));
 				}
 
-				final Collection<? extends MappingTree.MethodArgMapping> methodArgs = mapping.getArgs();
 				final List<String> params = new ArrayList<>();
 
-				for (MappingTree.MethodArgMapping arg : methodArgs) {
-					String argComment = arg.getComment();
-
-					if (argComment != null) {
-						params.addAll(Arrays.asList(("@param " + arg.getSrcName() + " " + argComment).split("\\R")));
-					}
+				for (JavadocIndex.ParamDoc param : methodDocs.params()) {
+					params.addAll(Arrays.asList(("@param " + param.name() + " " + param.comment()).split("\\R")));
 				}
 
 				// Add a blank line between params and the comment.
@@ -198,24 +167,20 @@ public class CFRObfuscationMapping extends NullMapping {
 				return this;
 			}
 
-			MappingTree.ClassMapping classMapping = getClassMapping(owner);
+			JavadocIndex.ClassDocs classDocs = getClassDocs(owner);
 
-			if (classMapping == null) {
+			if (classDocs == null) {
 				return this;
 			}
 
-			MappingTree.FieldMapping fieldMapping = classMapping.getField(field.getFieldName(), field.getDescriptor());
-
-			if (fieldMapping != null) {
-				dumpComment(fieldMapping.getComment());
-			}
+			dumpComment(classDocs.getFieldComment(field.getFieldName(), field.getDescriptor()));
 
 			return this;
 		}
 
-		private MappingTree.ClassMapping getClassMapping(JavaTypeInstance type) {
+		private JavadocIndex.ClassDocs getClassDocs(JavaTypeInstance type) {
 			String qualifiedName = type.getRawName().replace('.', '/');
-			return mappingTree.getClass(qualifiedName);
+			return javadocIndex.getClassDocs(qualifiedName);
 		}
 
 		private boolean isRecord(JavaTypeInstance javaTypeInstance) {
@@ -0,0 +1,156 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.decompilers.fernflower;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A minimal zip writer appending entries that were already compressed by the caller,
+ * so compression can happen on many threads while only one thread writes the file.
+ *
+ * <p>Zip64 is not supported: archives are limited to 65535 entries and 4 GiB.
+ */
+final class RawZipWriter implements Closeable {
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int VERSION = 20;
+	private static final int UTF8_FLAG = 1 << 11;
+	private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+	private final OutputStream out;
+	private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+	private final int dosTime;
+	private long offset;
+	private int entryCount;
+
+	RawZipWriter(OutputStream out) {
+		this.out = out;
+		LocalDateTime now = LocalDateTime.now();
+		this.dosTime = (now.getYear() - 1980) << 25 | now.getMonthValue() << 21 | now.getDayOfMonth() << 16
+				| now.getHour() << 11 | now.getMinute() << 5 | now.getSecond() >> 1;
+	}
+
+	/**
+	 * Compresses an entry, this is safe to call from any thread.
+	 */
+	static Entry compress(String name, byte[] data) {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+		if (data.length == 0) {
+			return new Entry(nameBytes, ZipEntry.STORED, 0, 0, data);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data);
+
+		Deflater deflater = DEFLATER.get();
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+		byte[] buffer = new byte[8192];
+
+		while (!deflater.finished()) {
+			compressed.write(buffer, 0, deflater.deflate(buffer));
+		}
+
+		deflater.reset();
+		return new Entry(nameBytes, ZipEntry.DEFLATED, (int) crc.getValue(), data.length, compressed.toByteArray());
+	}
+
+	void write(Entry entry) throws IOException {
+		if (entryCount == 0xFFFF || offset + 30 + entry.name().length + entry.data().length > 0xFFFFFFFFL) {
+			throw new IOException("Archive is too large, zip64 is not supported");
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(LOCAL_HEADER);
+		header.putShort((short) VERSION);
+		putEntryInfo(header, entry);
+		header.putShort((short) 0); // extra length
+		out.write(header.array());
+		out.write(entry.name());
+		out.write(entry.data());
+
+		ByteBuffer central = ByteBuffer.allocate(46).order(ByteOrder.LITTLE_ENDIAN);
+		central.putInt(CENTRAL_HEADER);
+		central.putShort((short) VERSION); // made by
+		central.putShort((short) VERSION); // needed
+		putEntryInfo(central, entry);
+		central.putShort((short) 0); // extra length
+		central.putShort((short) 0); // comment length
+		central.putShort((short) 0); // disk
+		central.putShort((short) 0); // internal attributes
+		central.putInt(0); // external attributes
+		central.putInt((int) offset);
+		centralDirectory.write(central.array());
+		centralDirectory.write(entry.name());
+
+		offset += 30 + entry.name().length + entry.data().length;
+		entryCount++;
+	}
+
+	// Writes everything from the general purpose flags up to the name length, shared by both headers
+	private void putEntryInfo(ByteBuffer buffer, Entry entry) {
+		buffer.putShort((short) UTF8_FLAG);
+		buffer.putShort((short) entry.method());
+		buffer.putInt(dosTime);
+		buffer.putInt(entry.crc());
+		buffer.putInt(entry.data().length);
+		buffer.putInt(entry.size());
+		buffer.putShort((short) entry.name().length);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try (out) {
+			centralDirectory.writeTo(out);
+
+			ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+			end.putInt(END_OF_CENTRAL_DIRECTORY);
+			end.putShort((short) 0); // disk
+			end.putShort((short) 0); // central directory disk
+			end.putShort((short) entryCount);
+			end.putShort((short) entryCount);
+			end.putInt(centralDirectory.size());
+			end.putInt((int) offset);
+			end.putShort((short) 0); // comment length
+			out.write(end.array());
+		}
+	}
+
+	record Entry(byte[] name, int method, int crc, int size, byte[] data) {
+	}
+}
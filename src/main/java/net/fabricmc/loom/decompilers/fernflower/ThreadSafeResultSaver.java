@@ -24,11 +24,12 @@
 
 package net.fabricmc.loom.decompilers.fernflower;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
@@ -36,27 +37,36 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
-import java.util.jar.JarOutputStream;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.jetbrains.java.decompiler.main.DecompilerContext;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
 import org.jetbrains.java.decompiler.main.extern.IResultSaver;
 
 import net.fabricmc.fernflower.api.IFabricResultSaver;
+import net.fabricmc.loom.decompilers.BinaryLineMap;
 
 /**
  * Created by covers1624 on 18/02/19.
+ *
+ * <p>Encoding, compression and line map formatting happen on the decompiler threads, the single
+ * writer thread of each archive only appends the prepared bytes. Decompiler threads are blocked
+ * once {@value #MAX_PENDING_ENTRIES} entries are waiting to be written.
  */
 public class ThreadSafeResultSaver implements IResultSaver, IFabricResultSaver {
+	private static final int MAX_PENDING_ENTRIES = 256;
+
 	private final Supplier<File> output;
 	private final Supplier<File> lineMapFile;
 
-	public Map<String, ZipOutputStream> outputStreams = new HashMap<>();
-	public Map<String, ExecutorService> saveExecutors = new HashMap<>();
-	public PrintWriter lineMapWriter;
+	private final Map<String, Archive> archives = new HashMap<>();
+	private OutputStream lineMapOutput;
 
 	public ThreadSafeResultSaver(Supplier<File> output, Supplier<File> lineMapFile) {
 		this.output = output;
@@ -69,17 +79,23 @@ public class ThreadSafeResultSaver implements IResultSaver, IFabricResultSaver {
 		File file = output.get();
 
 		try {
-			FileOutputStream fos = new FileOutputStream(file);
-			ZipOutputStream zos = manifest == null ? new ZipOutputStream(fos) : new JarOutputStream(fos, manifest);
-			outputStreams.put(key, zos);
-			saveExecutors.put(key, Executors.newSingleThreadExecutor());
+			RawZipWriter writer = new RawZipWriter(new BufferedOutputStream(new FileOutputStream(file)));
+
+			if (manifest != null) {
+				ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+				manifest.write(manifestBytes);
+				writer.write(RawZipWriter.compress(JarFile.MANIFEST_NAME, manifestBytes.toByteArray()));
+			}
+
+			archives.put(key, new Archive(writer));
 		} catch (IOException e) {
 			throw new RuntimeException("Unable to create archive: " + file, e);
 		}
 
 		if (lineMapFile.get() != null) {
 			try {
-				lineMapWriter = new PrintWriter(new FileWriter(lineMapFile.get()));
+				lineMapOutput = new BufferedOutputStream(new FileOutputStream(lineMapFile.get()));
+				BinaryLineMap.writeHeader(lineMapOutput);
 			} catch (IOException e) {
 				throw new RuntimeException("Unable to create line mapping file: " + lineMapFile.get(), e);
 			}
@@ -93,34 +109,32 @@ public class ThreadSafeResultSaver implements IResultSaver, IFabricResultSaver {
 
 	@Override
 	public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content, int[] mapping) {
-		String key = path + "/" + archiveName;
-		ExecutorService executor = saveExecutors.get(key);
-		executor.submit(() -> {
-			ZipOutputStream zos = outputStreams.get(key);
+		Archive archive = archives.get(path + "/" + archiveName);
+		byte[] bytes = content != null ? content.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		RawZipWriter.Entry entry = RawZipWriter.compress(entryName, bytes);
+		byte[] lineMap = mapping != null && lineMapOutput != null ? BinaryLineMap.encode(qualifiedName, mapping) : null;
+
+		archive.rawBytes.addAndGet(bytes.length);
+		archive.compressedBytes.addAndGet(entry.data().length);
+		archive.submit(() -> {
+			if (archive.failure != null) {
+				// The archive is broken already, closing it reports the failure
+				return;
+			}
 
 			try {
-				zos.putNextEntry(new ZipEntry(entryName));
-
-				if (content != null) {
-					zos.write(content.getBytes(StandardCharsets.UTF_8));
-				}
+				archive.writer.write(entry);
 			} catch (IOException e) {
-				DecompilerContext.getLogger().writeMessage("Cannot write entry " + entryName, e);
+				archive.failure = new IOException("Cannot write entry " + entryName, e);
+				return;
 			}
 
-			if (mapping != null && lineMapWriter != null) {
-				int maxLine = 0;
-				int maxLineDest = 0;
-				StringBuilder builder = new StringBuilder();
-
-				for (int i = 0; i < mapping.length; i += 2) {
-					maxLine = Math.max(maxLine, mapping[i]);
-					maxLineDest = Math.max(maxLineDest, mapping[i + 1]);
-					builder.append("\t").append(mapping[i]).append("\t").append(mapping[i + 1]).append("\n");
+			if (lineMap != null) {
+				try {
+					lineMapOutput.write(lineMap);
+				} catch (IOException e) {
+					archive.failure = new IOException("Cannot write line mapping of " + qualifiedName, e);
 				}
-
-				lineMapWriter.println(qualifiedName + "\t" + maxLine + "\t" + maxLineDest);
-				lineMapWriter.println(builder.toString());
 			}
 		});
 	}
@@ -128,30 +142,45 @@ public class ThreadSafeResultSaver implements IResultSaver, IFabricResultSaver {
 	@Override
 	public void closeArchive(String path, String archiveName) {
 		String key = path + "/" + archiveName;
-		ExecutorService executor = saveExecutors.get(key);
-		Future<?> closeFuture = executor.submit(() -> {
-			ZipOutputStream zos = outputStreams.get(key);
-
+		Archive archive = archives.get(key);
+		Future<?> closeFuture = archive.executor.submit(() -> {
 			try {
-				zos.close();
+				archive.writer.close();
 			} catch (IOException e) {
 				throw new RuntimeException("Unable to close zip. " + key, e);
 			}
 		});
-		executor.shutdown();
+		archive.executor.shutdown();
 
 		try {
 			closeFuture.get();
 		} catch (InterruptedException | ExecutionException e) {
-			throw new RuntimeException(e);
+			if (archive.failure != null) {
+				archive.failure.addSuppressed(e);
+			} else {
+				throw new RuntimeException(e);
+			}
+		}
+
+		archives.remove(key);
+
+		if (archive.failure == null) {
+			DecompilerContext.getLogger().writeMessage("Saved %s: %d entries, %d KiB encoded to %d KiB, at most %d of %d entries pending, decompiler threads waited %d ms for the writer".formatted(
+					key, archive.entryCount.get(), archive.rawBytes.get() / 1024, archive.compressedBytes.get() / 1024,
+					archive.peakPending.get(), MAX_PENDING_ENTRIES, TimeUnit.NANOSECONDS.toMillis(archive.waitNanos.get())), IFernflowerLogger.Severity.INFO);
 		}
 
-		outputStreams.remove(key);
-		saveExecutors.remove(key);
+		if (lineMapOutput != null) {
+			try {
+				lineMapOutput.close();
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to close line mapping file: " + lineMapFile.get(), e);
+			}
+		}
 
-		if (lineMapWriter != null) {
-			lineMapWriter.flush();
-			lineMapWriter.close();
+		if (archive.failure != null) {
+			// Do not report success for an archive with missing entries
+			throw new RuntimeException("Unable to write archive " + key, archive.failure);
 		}
 	}
 
@@ -174,4 +203,39 @@ public class ThreadSafeResultSaver implements IResultSaver, IFabricResultSaver {
 	@Override
 	public void copyEntry(String source, String path, String archiveName, String entry) {
 	}
+
+	private static final class Archive {
+		private final RawZipWriter writer;
+		private final ExecutorService executor = Executors.newSingleThreadExecutor();
+		private final Semaphore pendingEntries = new Semaphore(MAX_PENDING_ENTRIES);
+		private final AtomicInteger entryCount = new AtomicInteger();
+		private final AtomicInteger peakPending = new AtomicInteger();
+		private final AtomicLong rawBytes = new AtomicLong();
+		private final AtomicLong compressedBytes = new AtomicLong();
+		private final AtomicLong waitNanos = new AtomicLong();
+		// Only accessed by the writer thread, and read once the writer finished
+		private IOException failure;
+
+		private Archive(RawZipWriter writer) {
+			this.writer = writer;
+		}
+
+		private void submit(Runnable write) {
+			if (!pendingEntries.tryAcquire()) {
+				long start = System.nanoTime();
+				pendingEntries.acquireUninterruptibly();
+				waitNanos.addAndGet(System.nanoTime() - start);
+			}
+
+			peakPending.accumulateAndGet(MAX_PENDING_ENTRIES - pendingEntries.availablePermits(), Math::max);
+			entryCount.incrementAndGet();
+			executor.submit(() -> {
+				try {
+					write.run();
+				} finally {
+					pendingEntries.release();
+				}
+			});
+		}
+	}
 }
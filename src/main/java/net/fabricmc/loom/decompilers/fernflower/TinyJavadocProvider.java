@@ -24,10 +24,7 @@
 
 package net.fabricmc.loom.decompilers.fernflower;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -38,29 +35,25 @@ import org.jetbrains.java.decompiler.struct.StructRecordComponent;
 import org.objectweb.asm.Opcodes;
 
 import net.fabricmc.fernflower.api.IFabricJavadocProvider;
-import net.fabricmc.loom.api.mappings.layered.MappingsNamespace;
-import net.fabricmc.mappingio.MappingReader;
-import net.fabricmc.mappingio.adapter.MappingSourceNsSwitch;
-import net.fabricmc.mappingio.tree.MappingTree;
-import net.fabricmc.mappingio.tree.MemoryMappingTree;
+import net.fabricmc.loom.decompilers.JavadocIndex;
 
 public class TinyJavadocProvider implements IFabricJavadocProvider {
-	private final MappingTree mappingTree;
+	private final JavadocIndex javadocIndex;
 
 	public TinyJavadocProvider(File tinyFile) {
-		mappingTree = readMappings(tinyFile);
+		javadocIndex = JavadocIndex.forMappings(tinyFile.toPath());
 	}
 
 	@Override
 	public String getClassDoc(StructClass structClass) {
-		MappingTree.ClassMapping classMapping = mappingTree.getClass(structClass.qualifiedName);
+		JavadocIndex.ClassDocs classDocs = javadocIndex.getClassDocs(structClass.qualifiedName);
 
-		if (classMapping == null) {
+		if (classDocs == null) {
 			return null;
 		}
 
 		if (!isRecord(structClass)) {
-			return classMapping.getComment();
+			return classDocs.comment();
 		}
 
 		/**
@@ -70,30 +63,24 @@ public class TinyJavadocProvider implements IFabricJavadocProvider {
 		 */
 		List<String> parts = new ArrayList<>();
 
-		if (classMapping.getComment() != null) {
-			parts.add(classMapping.getComment());
+		if (classDocs.comment() != null) {
+			parts.add(classDocs.comment());
 		}
 
 		boolean addedParam = false;
 
 		for (StructRecordComponent component : structClass.getRecordComponents()) {
 			// The component will always match the field name and descriptor
-			MappingTree.FieldMapping fieldMapping = classMapping.getField(component.getName(), component.getDescriptor());
-
-			if (fieldMapping == null) {
-				continue;
-			}
-
-			String comment = fieldMapping.getComment();
+			String comment = classDocs.getFieldComment(component.getName(), component.getDescriptor());
 
 			if (comment != null) {
-				if (!addedParam && classMapping.getComment() != null) {
+				if (!addedParam && classDocs.comment() != null) {
 					//Add a blank line before components when the class has a comment
 					parts.add("");
 					addedParam = true;
 				}
 
-				parts.add(String.format("@param %s %s", fieldMapping.getName(MappingsNamespace.NAMED.toString()), comment));
+				parts.add(String.format("@param %s %s", component.getName(), comment));
 			}
 		}
 
@@ -111,48 +98,42 @@ public class TinyJavadocProvider implements IFabricJavadocProvider {
 			return null;
 		}
 
-		MappingTree.ClassMapping classMapping = mappingTree.getClass(structClass.qualifiedName);
+		JavadocIndex.ClassDocs classDocs = javadocIndex.getClassDocs(structClass.qualifiedName);
 
-		if (classMapping == null) {
+		if (classDocs == null) {
 			return null;
 		}
 
-		MappingTree.FieldMapping fieldMapping = classMapping.getField(structField.getName(), structField.getDescriptor());
-
-		return fieldMapping != null ? fieldMapping.getComment() : null;
+		return classDocs.getFieldComment(structField.getName(), structField.getDescriptor());
 	}
 
 	@Override
 	public String getMethodDoc(StructClass structClass, StructMethod structMethod) {
-		MappingTree.ClassMapping classMapping = mappingTree.getClass(structClass.qualifiedName);
+		JavadocIndex.ClassDocs classDocs = javadocIndex.getClassDocs(structClass.qualifiedName);
 
-		if (classMapping == null) {
+		if (classDocs == null) {
 			return null;
 		}
 
-		MappingTree.MethodMapping methodMapping = classMapping.getMethod(structMethod.getName(), structMethod.getDescriptor());
+		JavadocIndex.MethodDocs methodDocs = classDocs.getMethod(structMethod.getName(), structMethod.getDescriptor());
 
-		if (methodMapping != null) {
+		if (methodDocs != null) {
 			List<String> parts = new ArrayList<>();
 
-			if (methodMapping.getComment() != null) {
-				parts.add(methodMapping.getComment());
+			if (methodDocs.comment() != null) {
+				parts.add(methodDocs.comment());
 			}
 
 			boolean addedParam = false;
 
-			for (MappingTree.MethodArgMapping argMapping : methodMapping.getArgs()) {
-				String comment = argMapping.getComment();
-
-				if (comment != null) {
-					if (!addedParam && methodMapping.getComment() != null) {
-						//Add a blank line before params when the method has a comment
-						parts.add("");
-						addedParam = true;
-					}
-
-					parts.add(String.format("@param %s %s", argMapping.getName(MappingsNamespace.NAMED.toString()), comment));
+			for (JavadocIndex.ParamDoc param : methodDocs.params()) {
+				if (!addedParam && methodDocs.comment() != null) {
+					//Add a blank line before params when the method has a comment
+					parts.add("");
+					addedParam = true;
 				}
+
+				parts.add(String.format("@param %s %s", param.name(), param.comment()));
 			}
 
 			if (parts.isEmpty()) {
@@ -165,18 +146,6 @@ public class TinyJavadocProvider implements IFabricJavadocProvider {
 		return null;
 	}
 
-	private static MappingTree readMappings(File input) {
-		try (BufferedReader reader = Files.newBufferedReader(input.toPath())) {
-			MemoryMappingTree mappingTree = new MemoryMappingTree();
-			MappingSourceNsSwitch nsSwitch = new MappingSourceNsSwitch(mappingTree, MappingsNamespace.NAMED.toString());
-			MappingReader.read(reader, nsSwitch);
-
-			return mappingTree;
-		} catch (IOException e) {
-			throw new RuntimeException("Failed to read mappings", e);
-		}
-	}
-
 	public static boolean isRecord(StructClass structClass) {
 		return (structClass.getAccessFlags() & Opcodes.ACC_RECORD) != 0;
 	}
@@ -43,7 +43,8 @@ public interface LoomFiles {
 	File getProjectPersistentCache();
 	File getProjectBuildCache();
 	File getRemappedModCache();
-	File getNativesJarStore();
+	File getLibraryStore();
+	File getClassIndexCache();
 	File getDefaultLog4jConfigFile();
 	File getDevLauncherConfig();
 	File getUnpickLoggingConfigFile();
@@ -70,8 +70,13 @@ public abstract class LoomFilesBaseImpl implements LoomFiles {
 	}
 
 	@Override
-	public File getNativesJarStore() {
-		return createFile(getUserCache(), "natives/jars");
+	public File getLibraryStore() {
+		return createFile(getUserCache(), "libraries");
+	}
+
+	@Override
+	public File getClassIndexCache() {
+		return createFile(getUserCache(), "class-index");
 	}
 
 	@Override
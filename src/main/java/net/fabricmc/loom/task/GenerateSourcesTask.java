@@ -63,6 +63,7 @@ import net.fabricmc.loom.api.decompilers.LoomDecompiler;
 import net.fabricmc.loom.configuration.accesswidener.AccessWidenerFile;
 import net.fabricmc.loom.configuration.accesswidener.TransitiveAccessWidenerMappingsProcessor;
 import net.fabricmc.loom.configuration.providers.mappings.MappingsProviderImpl;
+import net.fabricmc.loom.decompilers.JavadocIndex;
 import net.fabricmc.loom.decompilers.LineNumberRemapper;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.FileSystemUtil;
@@ -137,6 +138,10 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 	private void doWork(@Nullable Path ipcPath) {
 		final String jvmMarkerValue = UUID.randomUUID().toString();
 		final WorkQueue workQueue = createWorkQueue(jvmMarkerValue);
+		final Path mappings = getMappings(getProject(), getExtension());
+
+		// Index the javadoc here, so the decompile worker does not have to read the full mappings
+		JavadocIndex.forMappings(mappings);
 
 		workQueue.submit(DecompileAction.class, params -> {
 			params.getDecompilerClass().set(decompiler.getClass().getCanonicalName());
@@ -148,7 +153,7 @@ public abstract class GenerateSourcesTask extends AbstractLoomTask {
 			params.getSourcesDestinationJar().set(getMappedJarFileWithSuffix("-sources.jar"));
 			params.getLinemap().set(getMappedJarFileWithSuffix("-sources.lmap"));
 			params.getLinemapJar().set(getMappedJarFileWithSuffix("-linemapped.jar"));
-			params.getMappings().set(getMappings(getProject(), getExtension()).toFile());
+			params.getMappings().set(mappings.toFile());
 
 			if (ipcPath != null) {
 				params.getIPCPath().set(ipcPath.toFile());
@@ -65,11 +65,13 @@ import org.gradle.api.provider.Property;
 import org.gradle.api.provider.SetProperty;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.jvm.tasks.Jar;
 import org.jetbrains.annotations.ApiStatus;
 
 import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.LoomGradlePlugin;
 import net.fabricmc.loom.build.JarRemapper;
 import net.fabricmc.loom.build.MixinRefmapHelper;
 import net.fabricmc.loom.build.nesting.EmptyNestedJarProvider;
@@ -82,6 +84,7 @@ import net.fabricmc.loom.configuration.JarManifestConfiguration;
 import net.fabricmc.loom.configuration.accesswidener.AccessWidenerFile;
 import net.fabricmc.loom.configuration.accesswidener.AccessWidenerJarProcessor;
 import net.fabricmc.loom.configuration.providers.mappings.MappingsProviderImpl;
+import net.fabricmc.loom.util.Checksum;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.FileSystemUtil;
 import net.fabricmc.loom.util.LfWriter;
@@ -101,7 +104,9 @@ public class RemapJarTask extends Jar {
 	private final Property<Boolean> addNestedDependencies;
 	private final Property<Boolean> addDefaultNestedDependencies;
 	private final Property<Boolean> remapAccessWidener;
+	private final Property<Boolean> incremental;
 	private final List<Action<TinyRemapper.Builder>> remapOptions = new ArrayList<>();
+	private boolean customRemapOptions = false;
 	private final Property<String> fromM;
 	private final Property<String> toM;
 	private final SetProperty<String> atAccessWideners;
@@ -119,6 +124,8 @@ public class RemapJarTask extends Jar {
 				.convention(true);
 		remapAccessWidener = getProject().getObjects().property(Boolean.class)
 				.convention(false);
+		incremental = getProject().getObjects().property(Boolean.class)
+				.convention(false);
 		fromM = getProject().getObjects().property(String.class)
 				.convention("named");
 		toM = getProject().getObjects().property(String.class)
@@ -185,7 +192,13 @@ public class RemapJarTask extends Jar {
 		NestedJarProvider nestedJarProvider = getNestedJarProvider();
 		nestedJarProvider.prepare(getProject());
 
-		jarRemapper.scheduleRemap(input, output)
+		JarRemapper.RemapData scheduled = jarRemapper.scheduleRemap(input, output);
+
+		if (getIncremental().get() && !customRemapOptions && !extension.getShareRemapCaches().get()) {
+			scheduled.incremental(getTemporaryDir().toPath().resolve("incremental"), getIncrementalKey(extension, fromM, toM));
+		}
+
+		scheduled
 				.supplyAccessWidener((remapData, remapper) -> {
 					if (getRemapAccessWidener().getOrElse(false) && extension.getAccessWidenerPath().isPresent()) {
 						AccessWidenerJarProcessor accessWidenerJarProcessor = extension.getJarProcessorManager().getByType(AccessWidenerJarProcessor.class);
@@ -261,6 +274,26 @@ public class RemapJarTask extends Jar {
 				});
 	}
 
+	// Everything besides the input and classpath that affects the remapped classes
+	private String getIncrementalKey(LoomGradleExtension extension, String fromM, String toM) throws IOException {
+		MappingsProviderImpl mappingsProvider = extension.getMappingsProvider();
+		Path mappings = (fromM.equals("srg") || toM.equals("srg")) && extension.shouldGenerateSrgTiny() ? mappingsProvider.tinyMappingsWithSrg : mappingsProvider.tinyMappings;
+		StringBuilder key = new StringBuilder()
+				.append(LoomGradlePlugin.LOOM_VERSION).append(':')
+				.append(fromM).append(':').append(toM).append(':')
+				.append(extension.getMixin().getUseLegacyMixinAp().get()).append(':')
+				.append(mappings.toAbsolutePath()).append(':').append(Files.size(mappings)).append(':').append(Files.getLastModifiedTime(mappings).toMillis());
+
+		for (File mixinMapFile : extension.getAllMixinMappings()) {
+			if (mixinMapFile.exists()) {
+				// Regenerated by every compilation, so the contents are compared
+				key.append(':').append(mixinMapFile.getAbsolutePath()).append('=').append(Checksum.truncatedSha256(mixinMapFile));
+			}
+		}
+
+		return key.toString();
+	}
+
 	private NestedJarProvider getNestedJarProvider() {
 		if (!LoomGradleExtension.get(getProject()).supportsInclude()) {
 			return EmptyNestedJarProvider.INSTANCE;
@@ -418,6 +451,19 @@ public class RemapJarTask extends Jar {
 		return remapAccessWidener;
 	}
 
+	/**
+	 * Gets whether only the classes that changed since the previous run are remapped, when possible.
+	 * Falls back to a full remap when a change may affect how other classes are remapped.
+	 *
+	 * <p>This is not used when the remap caches are shared between projects, or custom remap options are set.
+	 *
+	 * @return the property controlling incremental remapping
+	 */
+	@Internal
+	public Property<Boolean> getIncremental() {
+		return incremental;
+	}
+
 	/**
 	 * Gets the jar paths to the access wideners that will be converted to ATs for Forge runtime.
 	 * If you specify multiple files, they will be merged into one.
@@ -433,6 +479,7 @@ public class RemapJarTask extends Jar {
 
 	public void remapOptions(Action<TinyRemapper.Builder> action) {
 		this.remapOptions.add(action);
+		this.customRemapOptions = true;
 	}
 
 	public RemapJarTask classpath(FileCollection collection) {
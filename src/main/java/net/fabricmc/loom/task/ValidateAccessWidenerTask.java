@@ -29,14 +29,15 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 
 import javax.inject.Inject;
 
-import dev.architectury.tinyremapper.TinyRemapper;
-import dev.architectury.tinyremapper.api.TrEnvironment;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.SkipWhenEmpty;
 import org.gradle.api.tasks.TaskAction;
 
@@ -44,6 +45,7 @@ import net.fabricmc.accesswidener.AccessWidenerFormatException;
 import net.fabricmc.accesswidener.AccessWidenerReader;
 import net.fabricmc.accesswidener.AccessWidenerVisitor;
 import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.util.classindex.ClassIndex;
 
 public abstract class ValidateAccessWidenerTask extends DefaultTask {
 	@SkipWhenEmpty
@@ -53,55 +55,67 @@ public abstract class ValidateAccessWidenerTask extends DefaultTask {
 	@InputFile
 	public abstract RegularFileProperty getTargetJar();
 
+	@Internal
+	public abstract DirectoryProperty getClassIndexCache();
+
 	@Inject
 	public ValidateAccessWidenerTask() {
 		final LoomGradleExtension extension = LoomGradleExtension.get(getProject());
 
 		getAccessWidener().convention(extension.getAccessWidenerPath()).finalizeValueOnRead();
 		getTargetJar().convention(getProject().getLayout().file(getProject().provider(() -> extension.getMinecraftMappedProvider().getMappedJar()))).finalizeValueOnRead();
+		getClassIndexCache().convention(getProject().getLayout().dir(getProject().provider(() -> extension.getFiles().getClassIndexCache()))).finalizeValueOnRead();
 	}
 
 	@TaskAction
 	public void run() {
-		final TinyRemapper tinyRemapper = TinyRemapper.newRemapper().build();
-		tinyRemapper.readClassPath(getTargetJar().get().getAsFile().toPath());
+		final Path targetJar = getTargetJar().get().getAsFile().toPath();
+		final ClassIndex classIndex;
+
+		try {
+			classIndex = ClassIndex.of(targetJar, getClassIndexCache().get().getAsFile().toPath());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to index classes of " + targetJar, e);
+		}
 
-		final AccessWidenerValidator validator = new AccessWidenerValidator(tinyRemapper.getEnvironment());
+		final AccessWidenerValidator validator = new AccessWidenerValidator(classIndex);
 		final AccessWidenerReader accessWidenerReader = new AccessWidenerReader(validator);
 
 		try (BufferedReader reader = Files.newBufferedReader(getAccessWidener().get().getAsFile().toPath(), StandardCharsets.UTF_8)) {
 			accessWidenerReader.read(reader, "named");
 		} catch (AccessWidenerFormatException e) {
-			getProject().getLogger().error("Failed to validate access-widener file {} on line {}: {}", getAccessWidener().get().getAsFile().getName(), e.getLineNumber(), e.getMessage());
+			getLogger().error("Failed to validate access-widener file {} on line {}: {}", getAccessWidener().get().getAsFile().getName(), e.getLineNumber(), e.getMessage());
 			throw e;
 		} catch (IOException e) {
 			throw new UncheckedIOException("Failed to read access widener", e);
-		} finally {
-			tinyRemapper.finish();
 		}
 	}
 
 	/**
 	 * Validates that all entries in an access-widner file relate to a class/method/field in the mc jar.
 	 */
-	private static record AccessWidenerValidator(TrEnvironment environment) implements AccessWidenerVisitor {
+	private static record AccessWidenerValidator(ClassIndex classIndex) implements AccessWidenerVisitor {
 		@Override
 		public void visitClass(String name, AccessWidenerReader.AccessType access, boolean transitive) {
-			if (environment().getClass(name) == null) {
+			if (classIndex().getClassEntry(name) == null) {
 				throw new RuntimeException("Could not find class (%s)".formatted(name));
 			}
 		}
 
 		@Override
 		public void visitMethod(String owner, String name, String descriptor, AccessWidenerReader.AccessType access, boolean transitive) {
-			if (environment().getMethod(owner, name, descriptor) == null) {
+			ClassIndex.ClassEntry classEntry = classIndex().getClassEntry(owner);
+
+			if (classEntry == null || classEntry.getMethod(name, descriptor) == null) {
 				throw new RuntimeException("Could not find method (%s%s) in class (%s)".formatted(name, descriptor, owner));
 			}
 		}
 
 		@Override
 		public void visitField(String owner, String name, String descriptor, AccessWidenerReader.AccessType access, boolean transitive) {
-			if (environment().getField(owner, name, descriptor) == null) {
+			ClassIndex.ClassEntry classEntry = classIndex().getClassEntry(owner);
+
+			if (classEntry == null || classEntry.getField(name, descriptor) == null) {
 				throw new RuntimeException("Could not find field (%s%s) in class (%s)".formatted(name, descriptor, owner));
 			}
 		}
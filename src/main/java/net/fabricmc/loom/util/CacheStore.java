@@ -0,0 +1,200 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2018-2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+/**
+ * Coordinates writes to caches that are shared between Gradle daemons, such as the global user cache.
+ *
+ * <p>Artifacts are locked across processes through a sibling {@code .lock} file, published by atomically moving a
+ * completely written temporary file into place, and invalidated without pulling the file out from under a reader.
+ */
+public final class CacheStore {
+	private static final Logger LOGGER = Logging.getLogger(CacheStore.class);
+	private static final Map<Path, LockState> LOCKS = new ConcurrentHashMap<>();
+	private static final long MIN_RETRY_DELAY_MS = 10;
+	private static final long MAX_RETRY_DELAY_MS = 500;
+
+	private CacheStore() { }
+
+	/**
+	 * Locks the given artifact for this thread and any other process using the same cache. The lock is reentrant and
+	 * must be closed by the thread that acquired it.
+	 */
+	public static Lock lock(Path artifact) throws IOException {
+		Path path = artifact.toAbsolutePath().normalize();
+		LockState state = LOCKS.computeIfAbsent(path, p -> new LockState());
+		state.lock.lock();
+
+		if (state.lock.getHoldCount() > 1) {
+			return new Lock(state);
+		}
+
+		try {
+			Path lockFile = path.resolveSibling(path.getFileName() + ".lock");
+			Files.createDirectories(lockFile.getParent());
+			state.channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			state.fileLock = acquire(state.channel, path);
+		} catch (IOException | RuntimeException e) {
+			if (state.channel != null) {
+				state.channel.close();
+				state.channel = null;
+			}
+
+			state.lock.unlock();
+			throw e;
+		}
+
+		return new Lock(state);
+	}
+
+	// Polls instead of blocking in FileChannel.lock(), which throws when a Loom loaded by another class loader of this
+	// JVM holds the lock, as file locks are held by the whole process
+	private static FileLock acquire(FileChannel channel, Path path) throws IOException {
+		long delay = MIN_RETRY_DELAY_MS;
+		boolean logged = false;
+
+		while (true) {
+			try {
+				FileLock fileLock = channel.tryLock();
+
+				if (fileLock != null) {
+					return fileLock;
+				}
+			} catch (OverlappingFileLockException e) {
+				// Held by another class loader of this JVM, wait for it like for another process
+			}
+
+			if (!logged) {
+				LOGGER.lifecycle("Waiting for another build to release {}", path);
+				logged = true;
+			}
+
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the lock on " + path);
+			}
+
+			delay = Math.min(delay * 2, MAX_RETRY_DELAY_MS);
+		}
+	}
+
+	/**
+	 * Writes the artifact through a temporary file next to it, which is moved into place once the writer completed.
+	 * Readers therefore only ever see the previous or the new artifact. The temporary file does not exist yet when
+	 * the writer is called.
+	 */
+	public static void publish(Path artifact, Writer writer) throws IOException {
+		Path parent = artifact.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path tempFile = parent.resolve(artifact.getFileName() + "." + UUID.randomUUID() + ".tmp");
+
+		try {
+			writer.write(tempFile);
+			Files.move(tempFile, artifact, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Throwable t) {
+			Files.deleteIfExists(tempFile);
+			throw t;
+		}
+	}
+
+	/**
+	 * Removes the artifact. When it cannot be deleted because another process still has it open, it is moved aside
+	 * instead, so that it is gone for new readers while the existing ones keep reading the old file.
+	 */
+	public static void invalidate(Path artifact) throws IOException {
+		try {
+			Files.deleteIfExists(artifact);
+		} catch (IOException e) {
+			Path stale = artifact.resolveSibling(artifact.getFileName() + "." + UUID.randomUUID() + ".stale");
+
+			try {
+				Files.move(artifact, stale, StandardCopyOption.ATOMIC_MOVE);
+				stale.toFile().deleteOnExit();
+			} catch (IOException e2) {
+				e.addSuppressed(e2);
+				throw e;
+			}
+		}
+	}
+
+	public interface Writer {
+		void write(Path tempFile) throws IOException;
+	}
+
+	public static final class Lock implements Closeable {
+		private final LockState state;
+		private boolean closed;
+
+		private Lock(LockState state) {
+			this.state = state;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+
+			try {
+				if (state.lock.getHoldCount() == 1) {
+					state.fileLock.release();
+					state.channel.close();
+					state.fileLock = null;
+					state.channel = null;
+				}
+			} finally {
+				state.lock.unlock();
+			}
+		}
+	}
+
+	private static final class LockState {
+		private final ReentrantLock lock = new ReentrantLock();
+		private FileChannel channel;
+		private FileLock fileLock;
+	}
+}
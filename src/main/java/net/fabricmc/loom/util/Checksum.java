@@ -25,13 +25,11 @@
 package net.fabricmc.loom.util;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 
@@ -44,11 +42,10 @@ public class Checksum {
 		}
 
 		try {
-			HashCode hash = Files.asByteSource(file).hash(Hashing.sha1());
-			String hashString = hash.toString();
+			String hashString = FileHashCache.sha1(file).toString();
 			log.debug("Checksum check: '" + hashString + "' == '" + checksum + "'?");
 			return hashString.equals(checksum);
-		} catch (IOException e) {
+		} catch (UncheckedIOException e) {
 			e.printStackTrace();
 		}
 
@@ -56,21 +53,11 @@ public class Checksum {
 	}
 
 	public static byte[] sha256(File file) {
-		try {
-			HashCode hash = Files.asByteSource(file).hash(Hashing.sha256());
-			return hash.asBytes();
-		} catch (IOException e) {
-			throw new RuntimeException("Failed to get file hash");
-		}
+		return FileHashCache.sha256(file).asBytes();
 	}
 
 	public static String truncatedSha256(File file) {
-		try {
-			HashCode hash = Files.asByteSource(file).hash(Hashing.sha256());
-			return hash.toString().substring(0, 12);
-		} catch (IOException e) {
-			throw new UncheckedIOException("Failed to get file hash of " + file, e);
-		}
+		return FileHashCache.sha256(file).toString().substring(0, 12);
 	}
 
 	public static byte[] sha256(String string) {
@@ -62,20 +62,24 @@ public class DownloadUtil {
 	 * @throws IOException If an exception occurs during the process
 	 */
 	public static boolean downloadIfChanged(URL from, File to, Logger logger, boolean quiet) throws IOException {
-		HttpURLConnection connection = (HttpURLConnection) from.openConnection();
-
-		if (LoomGradlePlugin.refreshDeps) {
-			getETagFile(to).delete();
-			to.delete();
+		// Other builds sharing the cache wait until the file has been checked or replaced
+		try (CacheStore.Lock lock = CacheStore.lock(to.toPath())) {
+			return downloadIfChangedLocked(from, to, logger, quiet);
 		}
+	}
+
+	private static boolean downloadIfChangedLocked(URL from, File to, Logger logger, boolean quiet) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) from.openConnection();
+		// Refreshing ignores the existing file, which stays in place until the new one has been downloaded
+		boolean refresh = LoomGradlePlugin.refreshDeps;
 
 		// If the output already exists we'll use it's last modified time
-		if (to.exists()) {
+		if (!refresh && to.exists()) {
 			connection.setIfModifiedSince(to.lastModified());
 		}
 
 		//Try use the ETag if there's one for the file we're downloading
-		String etag = loadETag(to, logger);
+		String etag = refresh ? null : loadETag(to, logger);
 
 		if (etag != null) {
 			connection.setRequestProperty("If-None-Match", etag);
@@ -97,7 +101,7 @@ public class DownloadUtil {
 
 		long modifyTime = connection.getHeaderFieldDate("Last-Modified", -1);
 
-		if (to.exists() && (code == HttpURLConnection.HTTP_NOT_MODIFIED || modifyTime > 0 && to.lastModified() >= modifyTime)) {
+		if (!refresh && to.exists() && (code == HttpURLConnection.HTTP_NOT_MODIFIED || modifyTime > 0 && to.lastModified() >= modifyTime)) {
 			if (!quiet) {
 				logger.info("'{}' Not Modified, skipping.", to);
 			}
@@ -111,23 +115,21 @@ public class DownloadUtil {
 			logger.info("'{}' Changed, downloading {}", to, toNiceSize(contentLength));
 		}
 
-		try { // Try download to the output
+		// The download only replaces the previous file once it is complete
+		CacheStore.publish(to.toPath(), tempFile -> {
 			InputStream inputStream = connection.getInputStream();
 
 			if ("gzip".equals(connection.getContentEncoding())) {
 				inputStream = new GZIPInputStream(inputStream);
 			}
 
-			FileUtils.copyInputStreamToFile(inputStream, to);
-		} catch (IOException e) {
-			delete(to); // Probably isn't good if it fails to copy/save
-			throw e;
-		}
+			FileUtils.copyInputStreamToFile(inputStream, tempFile.toFile());
 
-		//Set the modify time to match the server's (if we know it)
-		if (modifyTime > 0) {
-			to.setLastModified(modifyTime);
-		}
+			//Set the modify time to match the server's (if we know it)
+			if (modifyTime > 0) {
+				tempFile.toFile().setLastModified(modifyTime);
+			}
+		});
 
 		//Save the ETag (if we know it)
 		String eTag = connection.getHeaderField("ETag");
@@ -139,6 +141,8 @@ public class DownloadUtil {
 			}
 
 			saveETag(to, eTag, logger);
+		} else if (refresh) {
+			getETagFile(to).delete();
 		}
 
 		return true;
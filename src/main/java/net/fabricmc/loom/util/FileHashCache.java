@@ -0,0 +1,249 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Remembers file hashes by path, size, modification time and file key, so unchanged files are only hashed once.
+ *
+ * <p>Hashes are kept for the lifetime of the daemon, and appended to a log in the user cache
+ * once {@link #setup(Path)} was called, so they are shared between builds and processes.
+ * Files modified within the last few seconds are hashed but never remembered, as a later write
+ * could keep the same size and modification time.
+ */
+public final class FileHashCache {
+	private static final Logger LOGGER = Logging.getLogger(FileHashCache.class);
+	private static final int MAGIC = 0x4C464843; // LFHC
+	private static final int VERSION = 1;
+	private static final long RACY_MILLIS = 2000;
+	// Three modified UTF-8 strings of at most 65535 bytes each, two longs and a hash
+	private static final int MAX_RECORD_LENGTH = 3 * (2 + 65535) + 2 * 8 + 2 + 0xFFFF;
+	private static final Map<Key, Entry> ENTRIES = new ConcurrentHashMap<>();
+	@Nullable
+	private static volatile Path log;
+
+	private FileHashCache() {
+	}
+
+	/**
+	 * Loads the persisted hashes, and appends any new hashes to the given log.
+	 */
+	public static synchronized void setup(Path file) {
+		if (file.equals(log)) {
+			return;
+		}
+
+		int records = 0;
+
+		if (Files.exists(file)) {
+			try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+				if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+					while (true) {
+						int length;
+
+						try {
+							length = in.readInt();
+						} catch (EOFException e) {
+							break;
+						}
+
+						if (length < 0 || length > MAX_RECORD_LENGTH || !readRecord(in.readNBytes(length))) {
+							// A torn or corrupt record, start a fresh log from the records read so far
+							records = Integer.MAX_VALUE;
+							break;
+						}
+
+						records++;
+					}
+				} else {
+					records = Integer.MAX_VALUE;
+				}
+			} catch (IOException e) {
+				LOGGER.warn("Failed to read file hash cache " + file, e);
+				records = Integer.MAX_VALUE;
+			}
+		}
+
+		try {
+			// Rewrite the log once outdated records dominate it, or when it is unreadable
+			if (!Files.exists(file) || records > ENTRIES.size() * 2 + 1000) {
+				compact(file);
+			}
+
+			log = file;
+		} catch (IOException e) {
+			LOGGER.warn("Failed to write file hash cache " + file, e);
+		}
+	}
+
+	public static HashCode sha1(File file) {
+		return hash(file.toPath(), "sha1", Hashing.sha1());
+	}
+
+	public static HashCode sha256(File file) {
+		return hash(file.toPath(), "sha256", Hashing.sha256());
+	}
+
+	/**
+	 * Hashes many files in parallel, so later lookups are served from the cache.
+	 */
+	public static void sha1All(Collection<File> files) {
+		ThreadingUtils.run(files, file -> {
+			if (file.exists()) {
+				sha1(file);
+			}
+		});
+	}
+
+	private static HashCode hash(Path path, String algorithm, HashFunction function) {
+		try {
+			Path absolutePath = path.toAbsolutePath();
+			BasicFileAttributes attributes = Files.readAttributes(absolutePath, BasicFileAttributes.class);
+			Key key = new Key(absolutePath.toString(), algorithm);
+			Entry entry = ENTRIES.get(key);
+
+			if (entry != null && entry.matches(attributes)) {
+				return HashCode.fromBytes(entry.hash());
+			}
+
+			HashCode hash = com.google.common.io.Files.asByteSource(absolutePath.toFile()).hash(function);
+
+			if (attributes.lastModifiedTime().toMillis() < System.currentTimeMillis() - RACY_MILLIS) {
+				entry = new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), fileKey(attributes), hash.asBytes());
+				ENTRIES.put(key, entry);
+				append(key, entry);
+			}
+
+			return hash;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to hash " + path, e);
+		}
+	}
+
+	private static String fileKey(BasicFileAttributes attributes) {
+		return Objects.toString(attributes.fileKey(), "");
+	}
+
+	private static void append(Key key, Entry entry) {
+		Path log = FileHashCache.log;
+
+		if (log == null) {
+			return;
+		}
+
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			// A single write per record, so records appended by other processes don't interleave
+			channel.write(ByteBuffer.wrap(writeRecord(key, entry)));
+		} catch (IOException e) {
+			LOGGER.debug("Failed to append to file hash cache " + log, e);
+		}
+	}
+
+	private static void compact(Path file) throws IOException {
+		// The log is shared by every daemon using this user cache
+		try (CacheStore.Lock lock = CacheStore.lock(file)) {
+			CacheStore.publish(file, temp -> {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+
+					for (Map.Entry<Key, Entry> entry : ENTRIES.entrySet()) {
+						out.write(writeRecord(entry.getKey(), entry.getValue()));
+					}
+				}
+			});
+		}
+	}
+
+	private static byte[] writeRecord(Key key, Entry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(0); // Length, filled in below
+			out.writeUTF(key.path());
+			out.writeUTF(key.algorithm());
+			out.writeLong(entry.size());
+			out.writeLong(entry.lastModified());
+			out.writeUTF(entry.fileKey());
+			out.writeShort(entry.hash().length);
+			out.write(entry.hash());
+		}
+
+		ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+		record.putInt(0, record.capacity() - 4);
+		return record.array();
+	}
+
+	private static boolean readRecord(byte[] record) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+			Key key = new Key(in.readUTF(), in.readUTF());
+			long size = in.readLong();
+			long lastModified = in.readLong();
+			String fileKey = in.readUTF();
+			byte[] hash = new byte[in.readUnsignedShort()];
+			in.readFully(hash);
+			// Later records replace earlier ones
+			ENTRIES.put(key, new Entry(size, lastModified, fileKey, hash));
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private record Key(String path, String algorithm) {
+	}
+
+	private record Entry(long size, long lastModified, String fileKey, byte[] hash) {
+		boolean matches(BasicFileAttributes attributes) {
+			return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis() && fileKey.equals(FileHashCache.fileKey(attributes));
+		}
+	}
+}
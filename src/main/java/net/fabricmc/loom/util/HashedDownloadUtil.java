@@ -35,7 +35,6 @@ import java.util.zip.GZIPInputStream;
 
 import javax.annotation.Nullable;
 
-import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import org.apache.commons.io.FileUtils;
 import org.gradle.api.logging.Logger;
@@ -67,11 +66,14 @@ public class HashedDownloadUtil {
 	}
 
 	public static void downloadIfInvalid(URL from, File to, String expectedHash, Logger logger, boolean quiet, boolean strict, Runnable startDownload) throws IOException {
-		if (LoomGradlePlugin.refreshDeps) {
-			delete(to);
+		// Other builds sharing the cache wait until the file has been validated or replaced
+		try (CacheStore.Lock lock = CacheStore.lock(to.toPath())) {
+			downloadIfInvalidLocked(from, to, expectedHash, logger, quiet, strict, startDownload);
 		}
+	}
 
-		if (to.exists()) {
+	private static void downloadIfInvalidLocked(URL from, File to, String expectedHash, Logger logger, boolean quiet, boolean strict, Runnable startDownload) throws IOException {
+		if (!LoomGradlePlugin.refreshDeps && to.exists()) {
 			if (strict) {
 				if (Checksum.equals(to, expectedHash)) {
 					// The hash matches the target file
@@ -107,25 +109,21 @@ public class HashedDownloadUtil {
 			logger.info("'{}' Changed, downloading {}", to, DownloadUtil.toNiceSize(contentLength));
 		}
 
-		try { // Try download to the output
+		// The download only replaces the previous file once it is complete and verified
+		CacheStore.publish(to.toPath(), tempFile -> {
 			InputStream inputStream = connection.getInputStream();
 
 			if ("gzip".equals(connection.getContentEncoding())) {
 				inputStream = new GZIPInputStream(inputStream);
 			}
 
-			FileUtils.copyInputStreamToFile(inputStream, to);
-		} catch (IOException e) {
-			delete(to); // Probably isn't good if it fails to copy/save
-			throw e;
-		}
+			FileUtils.copyInputStreamToFile(inputStream, tempFile.toFile());
 
-		if (!Checksum.equals(to, expectedHash)) {
-			String actualHash = Files.asByteSource(to).hash(Hashing.sha1()).toString();
-			delete(to);
-
-			throw new IOException(String.format("Downloaded file from %s to %s and got unexpected hash of %s expected %s", from, to, actualHash, expectedHash));
-		}
+			if (!Checksum.equals(tempFile.toFile(), expectedHash)) {
+				String actualHash = FileHashCache.sha1(tempFile.toFile()).toString();
+				throw new IOException(String.format("Downloaded file from %s to %s and got unexpected hash of %s expected %s", from, to, actualHash, expectedHash));
+			}
+		});
 
 		saveSha1(to, expectedHash, logger);
 	}
@@ -168,6 +166,16 @@ public class HashedDownloadUtil {
 		}
 	}
 
+	/**
+	 * Removes a downloaded file and its hash from a cache shared with other builds, which may be reading the file.
+	 */
+	public static void invalidate(File file) throws IOException {
+		try (CacheStore.Lock lock = CacheStore.lock(file.toPath())) {
+			CacheStore.invalidate(file.toPath());
+			CacheStore.invalidate(getSha1File(file).toPath());
+		}
+	}
+
 	public static void delete(File file) {
 		if (file.exists()) {
 			file.delete();
@@ -0,0 +1,136 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.commons.Remapper;
+
+import net.fabricmc.loom.util.classindex.ClassIndex;
+import net.fabricmc.mappingio.tree.MappingTree;
+
+/**
+ * A remapper backed directly by a mapping tree, for remapping a few names without the cost of a TinyRemapper.
+ *
+ * <p>Members that are not mapped in their owner are looked up in its super classes and interfaces,
+ * which are only resolved through the class index when such a lookup is needed.
+ */
+public final class MappingTreeRemapper extends Remapper {
+	private final int fromId;
+	private final int toId;
+	private final Function<String, ClassIndex.ClassEntry> hierarchy;
+	// Mapping trees only index classes by their source name, other namespaces would be a linear scan per lookup
+	private final Map<String, MappingTree.ClassMapping> classes = new HashMap<>();
+
+	/**
+	 * Creates a remapper between two namespaces of a mapping tree.
+	 *
+	 * @param hierarchy looks up the class entry of a class in the {@code from} namespace, may return null
+	 */
+	public MappingTreeRemapper(MappingTree mappingTree, String from, String to, Function<String, ClassIndex.ClassEntry> hierarchy) {
+		this.fromId = mappingTree.getNamespaceId(from);
+		this.toId = mappingTree.getNamespaceId(to);
+		this.hierarchy = hierarchy;
+
+		if (fromId == MappingTree.NULL_NAMESPACE_ID || toId == MappingTree.NULL_NAMESPACE_ID) {
+			throw new IllegalArgumentException("Mapping tree has no %s or %s namespace".formatted(from, to));
+		}
+
+		for (MappingTree.ClassMapping classMapping : mappingTree.getClasses()) {
+			String name = classMapping.getName(fromId);
+
+			if (name != null) {
+				classes.put(name, classMapping);
+			}
+		}
+	}
+
+	@Override
+	public String map(String internalName) {
+		MappingTree.ClassMapping classMapping = classes.get(internalName);
+		String mapped = classMapping != null ? classMapping.getName(toId) : null;
+		return mapped != null ? mapped : internalName;
+	}
+
+	@Override
+	public String mapMethodName(String owner, String name, String descriptor) {
+		MappingTree.MemberMapping method = findMember(owner, name, descriptor, true, new HashSet<>());
+		String mapped = method != null ? method.getName(toId) : null;
+		return mapped != null ? mapped : name;
+	}
+
+	@Override
+	public String mapFieldName(String owner, String name, String descriptor) {
+		MappingTree.MemberMapping field = findMember(owner, name, descriptor, false, new HashSet<>());
+		String mapped = field != null ? field.getName(toId) : null;
+		return mapped != null ? mapped : name;
+	}
+
+	@Nullable
+	private MappingTree.MemberMapping findMember(String owner, String name, String descriptor, boolean method, Set<String> visited) {
+		if (!visited.add(owner)) {
+			return null;
+		}
+
+		MappingTree.ClassMapping classMapping = classes.get(owner);
+
+		if (classMapping != null) {
+			MappingTree.MemberMapping member = method ? classMapping.getMethod(name, descriptor, fromId) : classMapping.getField(name, descriptor, fromId);
+
+			if (member != null) {
+				return member;
+			}
+		}
+
+		ClassIndex.ClassEntry classEntry = hierarchy.apply(owner);
+
+		if (classEntry == null) {
+			return null;
+		}
+
+		if (classEntry.superName() != null) {
+			MappingTree.MemberMapping member = findMember(classEntry.superName(), name, descriptor, method, visited);
+
+			if (member != null) {
+				return member;
+			}
+		}
+
+		for (String itf : classEntry.interfaces()) {
+			MappingTree.MemberMapping member = findMember(itf, name, descriptor, method, visited);
+
+			if (member != null) {
+				return member;
+			}
+		}
+
+		return null;
+	}
+}
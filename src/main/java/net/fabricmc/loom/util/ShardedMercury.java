@@ -0,0 +1,187 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.mercury.Mercury;
+import org.cadixdev.mercury.SourceProcessor;
+import org.cadixdev.mercury.remapper.MercuryRemapper;
+import org.gradle.api.Project;
+
+/**
+ * Remaps large source trees with several Mercury instances in parallel.
+ *
+ * <p>The tree is split into shards of whole packages. Every shard is parsed by its own Mercury instance,
+ * which shares the class path of the base instance and only sees its own files as sources, so the classes
+ * of the other shards must be resolvable from the class path, for example because the compiled jar of the
+ * tree is on it.
+ *
+ * <p>The shards cannot share one binding environment: Mercury creates a new JDT parser and name environment
+ * for every rewrite, and JDT bindings belong to the parser that resolved them. They cannot share the mappings
+ * either, as the remapper completes them while remapping and they are not thread safe, so every shard remaps
+ * with its own copy. The number of shards is therefore bounded by the available processors and by the heap
+ * that is still free, each shard being budgeted {@value #DEFAULT_SHARD_HEAP} MiB unless overridden with the
+ * {@code loom.sourceRemap.shardHeap} project property.
+ */
+public final class ShardedMercury {
+	private static final String SHARD_HEAP_PROPERTY = "loom.sourceRemap.shardHeap";
+	private static final int DEFAULT_SHARD_HEAP = 512;
+	// Below this, the cost of setting up another JDT environment outweighs the gain
+	private static final int MIN_FILES_PER_SHARD = 400;
+
+	private ShardedMercury() {
+	}
+
+	/**
+	 * Remaps the source tree, in shards when it is large enough.
+	 *
+	 * @param base     the Mercury instance used for small trees, whose {@link MercuryRemapper} remaps with the mappings
+	 * @param mappings the mappings of the remapper of the base instance, copied for every shard
+	 */
+	public static void rewrite(Project project, Mercury base, MappingSet mappings, Path source, Path destination) throws Exception {
+		Map<Path, List<Path>> packages = new TreeMap<>();
+		int fileCount = 0;
+
+		try (Stream<Path> paths = Files.walk(source)) {
+			for (Path path : (Iterable<? extends Path>) paths::iterator) {
+				if (Files.isRegularFile(path) && path.getFileName().toString().endsWith(".java")) {
+					Path relative = source.relativize(path);
+					packages.computeIfAbsent(Objects.requireNonNullElse(relative.getParent(), relative.getFileSystem().getPath("")), p -> new ArrayList<>()).add(relative);
+					fileCount++;
+				}
+			}
+		}
+
+		int shardCount = getShardCount(project, fileCount, packages.size());
+
+		if (shardCount <= 1) {
+			base.rewrite(source, destination);
+			return;
+		}
+
+		project.getLogger().info(":remapping {} source files in {} shards", fileCount, shardCount);
+		List<List<Path>> shards = distribute(packages, shardCount);
+		Path shardRoot = Files.createTempDirectory("loom-source-shards");
+
+		try {
+			List<Path> shardDirs = new ArrayList<>();
+
+			for (int i = 0; i < shards.size(); i++) {
+				Path shardDir = shardRoot.resolve(Integer.toString(i));
+				shardDirs.add(shardDir);
+
+				for (Path relative : shards.get(i)) {
+					link(source.resolve(relative), shardDir.resolve(relative.toString()));
+				}
+			}
+
+			List<Integer> indices = new ArrayList<>();
+			List<MappingSet> shardMappings = new ArrayList<>();
+
+			for (int i = 0; i < shardDirs.size(); i++) {
+				indices.add(i);
+				// Copied before any shard starts, remapping completes the mappings it reads
+				shardMappings.add(mappings.copy());
+			}
+
+			ThreadingUtils.run(indices, i -> {
+				Mercury mercury = new Mercury();
+				mercury.setGracefulClasspathChecks(base.isGracefulClasspathChecks());
+				mercury.getClassPath().addAll(base.getClassPath());
+				mercury.getSourcePath().addAll(base.getSourcePath());
+
+				for (SourceProcessor processor : base.getProcessors()) {
+					mercury.getProcessors().add(processor instanceof MercuryRemapper ? MercuryRemapper.create(shardMappings.get(i)) : processor);
+				}
+
+				mercury.rewrite(shardDirs.get(i), destination);
+			});
+		} finally {
+			Files.walkFileTree(shardRoot, new DeletingFileVisitor());
+		}
+	}
+
+	private static int getShardCount(Project project, int fileCount, int packageCount) {
+		long shardHeap = DEFAULT_SHARD_HEAP;
+		Object property = project.findProperty(SHARD_HEAP_PROPERTY);
+
+		if (property != null) {
+			try {
+				shardHeap = Math.max(1, Long.parseLong(property.toString()));
+			} catch (NumberFormatException e) {
+				project.getLogger().warn("Invalid value for {}: '{}', expected a size in MiB", SHARD_HEAP_PROPERTY, property);
+			}
+		}
+
+		Runtime runtime = Runtime.getRuntime();
+		// Only count the heap that is not already taken, for example by the mappings the shards copy
+		long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+		long byHeap = freeHeap / (shardHeap * 1024 * 1024);
+		long byFiles = fileCount / MIN_FILES_PER_SHARD;
+		return (int) Math.min(Math.min(byHeap, byFiles), Math.min(packageCount, runtime.availableProcessors()));
+	}
+
+	/**
+	 * Assigns whole packages to shards, largest first onto the currently smallest shard.
+	 */
+	private static List<List<Path>> distribute(Map<Path, List<Path>> packages, int shardCount) {
+		List<List<Path>> shards = new ArrayList<>();
+
+		for (int i = 0; i < shardCount; i++) {
+			shards.add(new ArrayList<>());
+		}
+
+		List<List<Path>> sortedPackages = new ArrayList<>(packages.values());
+		sortedPackages.sort(Comparator.<List<Path>>comparingInt(List::size).reversed());
+
+		for (List<Path> files : sortedPackages) {
+			shards.stream().min(Comparator.comparingInt(List::size)).orElseThrow().addAll(files);
+		}
+
+		return shards;
+	}
+
+	private static void link(Path from, Path to) throws IOException {
+		Files.createDirectories(to.getParent());
+
+		try {
+			Files.createLink(to, from);
+		} catch (IOException | UnsupportedOperationException e) {
+			// Different file stores, or no hard link support
+			Files.copy(from, to);
+		}
+	}
+}
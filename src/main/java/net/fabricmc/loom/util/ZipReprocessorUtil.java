@@ -26,23 +26,60 @@ package net.fabricmc.loom.util;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Rewrites a finished zip with a reproducible entry order and/or constant timestamps.
+ *
+ * <p>The zip is streamed into a temporary file: deflated entry data is copied as is with new headers,
+ * producing the same archive {@link ZipOutputStream} would when re-compressing every entry.
+ * Zips that cannot be copied this way (zip64, encryption, other compression methods, non-ASCII names without
+ * the UTF-8 flag) are rewritten entry by entry.
+ */
 public class ZipReprocessorUtil {
 	/**
 	 * See {@link org.gradle.api.internal.file.archive.ZipCopyAction} about this.
 	 */
 	private static final long CONSTANT_TIME_FOR_ZIP_ENTRIES = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
 
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int DATA_DESCRIPTOR = 0x08074b50;
+	private static final int EXTENDED_TIMESTAMP = 0x5455;
+	private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+	private static final int UTF8_FLAG = 1 << 11;
+	// The layout ZipOutputStream uses for a deflated entry with a modification and access time
+	private static final int VERSION = 20;
+	private static final int TIMESTAMP_FLAGS = 0b11;
+	private static final long MAX_SIZE = 0xFFFFFFFFL;
+
 	private ZipReprocessorUtil() { }
 
 	public static void reprocessZip(File file, boolean reproducibleFileOrder, boolean preserveFileTimestamps) throws IOException {
@@ -50,7 +87,332 @@ public class ZipReprocessorUtil {
 			return;
 		}
 
-		try (ZipFile zipFile = new ZipFile(file)) {
+		Path path = file.toPath();
+		Path temp = path.resolveSibling(file.getName() + ".tmp");
+
+		try {
+			boolean copied;
+
+			try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+				List<Entry> entries = readCentralDirectory(in);
+				copied = entries != null;
+
+				if (copied) {
+					if (reproducibleFileOrder) {
+						entries.sort(Comparator.comparing(Entry::name));
+					}
+
+					try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+						copy(in, out, entries, preserveFileTimestamps);
+					}
+				}
+			}
+
+			if (!copied) {
+				rewrite(file, temp, reproducibleFileOrder, preserveFileTimestamps);
+			}
+
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void copy(FileChannel in, FileChannel out, List<Entry> entries, boolean preserveFileTimestamps) throws IOException {
+		ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+		int dosTime = toDosTime(CONSTANT_TIME_FOR_ZIP_ENTRIES);
+		int unixTime = (int) FileTime.fromMillis(CONSTANT_TIME_FOR_ZIP_ENTRIES).to(TimeUnit.SECONDS);
+
+		for (Entry entry : entries) {
+			long offset = out.position();
+
+			if (offset > MAX_SIZE) {
+				throw new IOException("Zip is too large, zip64 is not supported");
+			}
+
+			ByteBuffer localHeader = read(in, entry.localOffset(), 30);
+
+			if (localHeader.getInt(0) != LOCAL_HEADER) {
+				throw new IOException("Invalid local header for " + entry.name());
+			}
+
+			long dataOffset = entry.localOffset() + 30 + Short.toUnsignedInt(localHeader.getShort(26)) + Short.toUnsignedInt(localHeader.getShort(28));
+
+			if (preserveFileTimestamps) {
+				// Only the order changes, the whole local record is copied
+				long length = dataOffset - entry.localOffset() + entry.compressedSize();
+
+				if ((entry.flag() & DATA_DESCRIPTOR_FLAG) != 0) {
+					length += read(in, dataOffset + entry.compressedSize(), 4).getInt(0) == DATA_DESCRIPTOR ? 16 : 12;
+				}
+
+				transfer(in, entry.localOffset(), length, out);
+				ByteBuffer central = ByteBuffer.wrap(entry.central()).order(ByteOrder.LITTLE_ENDIAN);
+				central.putInt(42, (int) offset);
+				centralDirectory.write(central.array());
+				continue;
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(30 + entry.nameBytes().length + 13).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(LOCAL_HEADER);
+			header.putShort((short) VERSION);
+			header.putShort((short) (DATA_DESCRIPTOR_FLAG | UTF8_FLAG));
+			header.putShort((short) ZipEntry.DEFLATED);
+			header.putInt(dosTime);
+			header.putInt(0);
+			header.putInt(0);
+			header.putInt(0);
+			header.putShort((short) entry.nameBytes().length);
+			header.putShort((short) 13);
+			header.put(entry.nameBytes());
+			header.putShort((short) EXTENDED_TIMESTAMP);
+			header.putShort((short) 9);
+			header.put((byte) TIMESTAMP_FLAGS);
+			header.putInt(unixTime);
+			header.putInt(unixTime);
+			write(out, header);
+
+			long compressedSize;
+
+			if (entry.method() == ZipEntry.DEFLATED) {
+				transfer(in, dataOffset, entry.compressedSize(), out);
+				compressedSize = entry.compressedSize();
+			} else {
+				compressedSize = deflate(in, dataOffset, entry.compressedSize(), out);
+			}
+
+			if (compressedSize > MAX_SIZE) {
+				throw new IOException("Zip is too large, zip64 is not supported");
+			}
+
+			ByteBuffer descriptor = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+			descriptor.putInt(DATA_DESCRIPTOR);
+			descriptor.putInt(entry.crc());
+			descriptor.putInt((int) compressedSize);
+			descriptor.putInt((int) entry.size());
+			write(out, descriptor);
+
+			ByteBuffer central = ByteBuffer.allocate(46 + entry.nameBytes().length + 9).order(ByteOrder.LITTLE_ENDIAN);
+			central.putInt(CENTRAL_HEADER);
+			central.putShort((short) VERSION); // made by
+			central.putShort((short) VERSION); // needed
+			central.putShort((short) (DATA_DESCRIPTOR_FLAG | UTF8_FLAG));
+			central.putShort((short) ZipEntry.DEFLATED);
+			central.putInt(dosTime);
+			central.putInt(entry.crc());
+			central.putInt((int) compressedSize);
+			central.putInt((int) entry.size());
+			central.putShort((short) entry.nameBytes().length);
+			central.putShort((short) 9); // extra length
+			central.putShort((short) 0); // comment length
+			central.putShort((short) 0); // disk
+			central.putShort((short) 0); // internal attributes
+			central.putInt(0); // external attributes
+			central.putInt((int) offset);
+			central.put(entry.nameBytes());
+			// Only the modification time is repeated in the central directory
+			central.putShort((short) EXTENDED_TIMESTAMP);
+			central.putShort((short) 5);
+			central.put((byte) TIMESTAMP_FLAGS);
+			central.putInt(unixTime);
+			centralDirectory.write(central.array());
+		}
+
+		long centralOffset = out.position();
+
+		if (centralOffset > MAX_SIZE) {
+			throw new IOException("Zip is too large, zip64 is not supported");
+		}
+
+		write(out, ByteBuffer.wrap(centralDirectory.toByteArray()));
+
+		ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+		end.putInt(END_OF_CENTRAL_DIRECTORY);
+		end.putShort((short) 0); // disk
+		end.putShort((short) 0); // central directory disk
+		end.putShort((short) entries.size());
+		end.putShort((short) entries.size());
+		end.putInt(centralDirectory.size());
+		end.putInt((int) centralOffset);
+		end.putShort((short) 0); // comment length
+		write(out, end);
+	}
+
+	/**
+	 * Reads the central directory, or returns null when the entries cannot be copied.
+	 */
+	@Nullable
+	private static List<Entry> readCentralDirectory(FileChannel in) throws IOException {
+		long size = in.size();
+
+		if (size < 22 || size > MAX_SIZE) {
+			return null;
+		}
+
+		int tailLength = (int) Math.min(size, 22 + 0xFFFF);
+		ByteBuffer tail = read(in, size - tailLength, tailLength);
+		int endOffset = -1;
+
+		for (int i = tailLength - 22; i >= 0; i--) {
+			if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY && i + 22 + Short.toUnsignedInt(tail.getShort(i + 20)) == tailLength) {
+				endOffset = i;
+				break;
+			}
+		}
+
+		if (endOffset == -1) {
+			return null;
+		}
+
+		int count = Short.toUnsignedInt(tail.getShort(endOffset + 10));
+		long centralSize = Integer.toUnsignedLong(tail.getInt(endOffset + 12));
+		long centralOffset = Integer.toUnsignedLong(tail.getInt(endOffset + 16));
+
+		if (count == 0xFFFF || centralSize == 0xFFFFFFFFL || centralOffset == 0xFFFFFFFFL || centralOffset + centralSize > size) {
+			// Zip64
+			return null;
+		}
+
+		ByteBuffer central = read(in, centralOffset, (int) centralSize);
+		List<Entry> entries = new ArrayList<>(count);
+		int position = 0;
+
+		for (int i = 0; i < count; i++) {
+			if (position + 46 > centralSize || central.getInt(position) != CENTRAL_HEADER) {
+				return null;
+			}
+
+			int flag = Short.toUnsignedInt(central.getShort(position + 8));
+			int method = Short.toUnsignedInt(central.getShort(position + 10));
+			long compressedSize = Integer.toUnsignedLong(central.getInt(position + 20));
+			long uncompressedSize = Integer.toUnsignedLong(central.getInt(position + 24));
+			int nameLength = Short.toUnsignedInt(central.getShort(position + 28));
+			int length = 46 + nameLength + Short.toUnsignedInt(central.getShort(position + 30)) + Short.toUnsignedInt(central.getShort(position + 32));
+			long localOffset = Integer.toUnsignedLong(central.getInt(position + 42));
+
+			if ((flag & 1) != 0 || (method != ZipEntry.DEFLATED && method != ZipEntry.STORED)
+					|| compressedSize == 0xFFFFFFFFL || uncompressedSize == 0xFFFFFFFFL || localOffset == 0xFFFFFFFFL) {
+				// Encrypted, zip64 or an unsupported compression method
+				return null;
+			}
+
+			byte[] nameBytes = new byte[nameLength];
+			central.get(position + 46, nameBytes);
+
+			if ((flag & UTF8_FLAG) == 0 && !isAscii(nameBytes)) {
+				// The name is in a legacy encoding, which the copied headers would claim to be UTF-8
+				return null;
+			}
+
+			byte[] record = new byte[length];
+			central.get(position, record);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+			entries.add(new Entry(name, name.getBytes(StandardCharsets.UTF_8), record, flag, method, central.getInt(position + 16), compressedSize, uncompressedSize, localOffset));
+			position += length;
+		}
+
+		return entries;
+	}
+
+	private static boolean isAscii(byte[] bytes) {
+		for (byte b : bytes) {
+			if (b < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	// The extended dos time written by ZipOutputStream, without the sub-second part it keeps in the upper bits
+	private static int toDosTime(long time) {
+		LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+		int year = dateTime.getYear() - 1980;
+
+		if (year < 0) {
+			return (1 << 21) | (1 << 16);
+		}
+
+		return year << 25 | dateTime.getMonthValue() << 21 | dateTime.getDayOfMonth() << 16
+				| dateTime.getHour() << 11 | dateTime.getMinute() << 5 | dateTime.getSecond() >> 1;
+	}
+
+	private static long deflate(FileChannel in, long position, long length, FileChannel out) throws IOException {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+		try {
+			byte[] input = new byte[64 * 1024];
+			byte[] output = new byte[64 * 1024];
+			ByteBuffer inputBuffer = ByteBuffer.wrap(input);
+			long remaining = length;
+
+			while (remaining > 0) {
+				inputBuffer.clear().limit((int) Math.min(input.length, remaining));
+				int read = in.read(inputBuffer, position + length - remaining);
+
+				if (read < 0) {
+					throw new IOException("Unexpected end of zip");
+				}
+
+				remaining -= read;
+				deflater.setInput(input, 0, read);
+
+				while (!deflater.needsInput()) {
+					write(out, ByteBuffer.wrap(output, 0, deflater.deflate(output)));
+				}
+			}
+
+			deflater.finish();
+
+			while (!deflater.finished()) {
+				write(out, ByteBuffer.wrap(output, 0, deflater.deflate(output)));
+			}
+
+			return deflater.getBytesWritten();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static ByteBuffer read(FileChannel in, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buffer.hasRemaining()) {
+			if (in.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of zip");
+			}
+		}
+
+		return buffer;
+	}
+
+	private static void transfer(FileChannel in, long position, long length, FileChannel out) throws IOException {
+		long transferred = 0;
+
+		while (transferred < length) {
+			long count = in.transferTo(position + transferred, length - transferred, out);
+
+			if (count <= 0) {
+				throw new IOException("Unexpected end of zip");
+			}
+
+			transferred += count;
+		}
+	}
+
+	private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+		buffer.rewind();
+
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	// Fallback for zips that cannot be copied, re-compresses every entry
+	private static void rewrite(File file, Path output, boolean reproducibleFileOrder, boolean preserveFileTimestamps) throws IOException {
+		try (ZipFile zipFile = new ZipFile(file);
+				OutputStream outputStream = Files.newOutputStream(output);
+				ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
 			ZipEntry[] entries;
 
 			if (reproducibleFileOrder) {
@@ -59,35 +421,27 @@ public class ZipReprocessorUtil {
 				entries = zipFile.stream().toArray(ZipEntry[]::new);
 			}
 
-			ByteArrayOutputStream outZip = new ByteArrayOutputStream(zipFile.size());
-
-			try (ZipOutputStream zipOutputStream = new ZipOutputStream(outZip)) {
-				for (ZipEntry entry : entries) {
-					ZipEntry newEntry = entry;
+			for (ZipEntry entry : entries) {
+				ZipEntry newEntry = entry;
 
-					if (!preserveFileTimestamps) {
-						newEntry = new ZipEntry(entry.getName());
-						newEntry.setTime(CONSTANT_TIME_FOR_ZIP_ENTRIES);
-						newEntry.setLastModifiedTime(FileTime.fromMillis(CONSTANT_TIME_FOR_ZIP_ENTRIES));
-						newEntry.setLastAccessTime(FileTime.fromMillis(CONSTANT_TIME_FOR_ZIP_ENTRIES));
-					}
-
-					zipOutputStream.putNextEntry(newEntry);
-					InputStream inputStream = zipFile.getInputStream(entry);
-					byte[] buf = new byte[1024];
-					int length;
+				if (!preserveFileTimestamps) {
+					newEntry = new ZipEntry(entry.getName());
+					newEntry.setTime(CONSTANT_TIME_FOR_ZIP_ENTRIES);
+					newEntry.setLastModifiedTime(FileTime.fromMillis(CONSTANT_TIME_FOR_ZIP_ENTRIES));
+					newEntry.setLastAccessTime(FileTime.fromMillis(CONSTANT_TIME_FOR_ZIP_ENTRIES));
+				}
 
-					while ((length = inputStream.read(buf)) > 0) {
-						zipOutputStream.write(buf, 0, length);
-					}
+				zipOutputStream.putNextEntry(newEntry);
 
-					zipOutputStream.closeEntry();
+				try (InputStream inputStream = zipFile.getInputStream(entry)) {
+					inputStream.transferTo(zipOutputStream);
 				}
-			}
 
-			try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
-				outZip.writeTo(fileOutputStream);
+				zipOutputStream.closeEntry();
 			}
 		}
 	}
+
+	private record Entry(String name, byte[] nameBytes, byte[] central, int flag, int method, int crc, long compressedSize, long size, long localOffset) {
+	}
 }
@@ -0,0 +1,471 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.classindex;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import net.fabricmc.loom.util.CacheStore;
+import net.fabricmc.loom.util.Checksum;
+import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.ThreadingUtils;
+
+/**
+ * An index of the class metadata of a jar: class names, super classes, interfaces, access flags,
+ * field and method signatures and the inner class table. Method bodies are never parsed.
+ *
+ * <p>Indexes are persisted per jar hash in a compact binary file, a string table followed by variable width
+ * class records that are decoded in a single pass, so every jar is only scanned once, no matter how many
+ * projects, tasks or mapping versions use it. Index files that were not used for a month are pruned.
+ * Indexes that were already loaded are additionally shared in memory by the daemon, keyed by the path, size and
+ * modification time of their jar, and the least recently used ones are dropped above a total number of classes.
+ */
+public final class ClassIndex {
+	private static final int MAGIC = 0x4C434958; // LCIX
+	private static final int VERSION = 2;
+	private static final int MAX_LOADED_CLASSES = 50_000;
+	private static final long UNUSED_FILE_EXPIRY = TimeUnit.DAYS.toMillis(30);
+	private static final Map<LoadedKey, ClassIndex> LOADED_INDEXES = new LinkedHashMap<>(16, 0.75f, true);
+	private static int loadedClasses;
+
+	private final Map<String, ClassEntry> classes;
+
+	private ClassIndex(Map<String, ClassEntry> classes) {
+		this.classes = classes;
+	}
+
+	/**
+	 * Gets the index of a jar. Indexes are looked up in memory first, then in the cache directory,
+	 * and are only created and cached when missing from both.
+	 *
+	 * @param jar            the jar to index
+	 * @param cacheDirectory the directory storing the indexes
+	 * @return the index
+	 * @throws IOException if the jar or the cache could not be read
+	 */
+	public static ClassIndex of(Path jar, Path cacheDirectory) throws IOException {
+		LoadedKey key = new LoadedKey(jar.toAbsolutePath().normalize(), Files.size(jar), Files.getLastModifiedTime(jar).toMillis());
+
+		synchronized (LOADED_INDEXES) {
+			ClassIndex loaded = LOADED_INDEXES.get(key);
+
+			if (loaded != null) {
+				return loaded;
+			}
+		}
+
+		Path cacheFile = cacheDirectory.resolve(Checksum.truncatedSha256(jar.toFile()) + ".classindex");
+		ClassIndex index = readCache(cacheFile);
+
+		if (index == null) {
+			index = create(jar);
+			index.write(cacheFile);
+			prune(cacheDirectory);
+		} else {
+			touch(cacheFile);
+		}
+
+		synchronized (LOADED_INDEXES) {
+			ClassIndex previous = LOADED_INDEXES.put(key, index);
+
+			if (previous != null) {
+				loadedClasses -= previous.classes.size();
+			}
+
+			loadedClasses += index.classes.size();
+			Iterator<ClassIndex> iterator = LOADED_INDEXES.values().iterator();
+
+			// The least recently used indexes come first, the one just added is always kept
+			while (loadedClasses > MAX_LOADED_CLASSES && iterator.hasNext()) {
+				ClassIndex eldest = iterator.next();
+
+				if (eldest == index) {
+					break;
+				}
+
+				iterator.remove();
+				loadedClasses -= eldest.classes.size();
+			}
+		}
+
+		return index;
+	}
+
+	private static void touch(Path cacheFile) {
+		try {
+			Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// Only delays the pruning of an index that is in use
+		}
+	}
+
+	private static void prune(Path cacheDirectory) {
+		long expiry = System.currentTimeMillis() - UNUSED_FILE_EXPIRY;
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory, "*.{classindex,tmp}")) {
+			for (Path file : files) {
+				if (Files.getLastModifiedTime(file).toMillis() < expiry) {
+					CacheStore.invalidate(file);
+				}
+			}
+		} catch (IOException e) {
+			// Pruning is best effort, it is tried again when the next index is created
+		}
+	}
+
+	/**
+	 * Creates the index of a jar, reading its classes in parallel.
+	 *
+	 * @param jar the jar to index
+	 * @return the index
+	 * @throws IOException if the jar could not be read
+	 */
+	public static ClassIndex create(Path jar) throws IOException {
+		try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+			List<ThreadingUtils.UnsafeCallable<ClassEntry>> jobs = new ArrayList<>();
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+
+				if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+					jobs.add(() -> {
+						try (InputStream is = zipFile.getInputStream(entry)) {
+							return readClass(is.readAllBytes());
+						}
+					});
+				}
+			}
+
+			Map<String, ClassEntry> classes = new LinkedHashMap<>();
+
+			for (ClassEntry classEntry : ThreadingUtils.get(jobs)) {
+				classes.put(classEntry.name(), classEntry);
+			}
+
+			return new ClassIndex(classes);
+		}
+	}
+
+	private static ClassEntry readClass(byte[] bytes) {
+		ClassEntryBuilder builder = new ClassEntryBuilder();
+
+		new ClassReader(bytes).accept(new ClassVisitor(Constants.ASM_VERSION) {
+			@Override
+			public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+				builder.name = name;
+				builder.access = access;
+				builder.superName = superName;
+				builder.interfaces = interfaces != null ? List.of(interfaces) : List.of();
+			}
+
+			@Override
+			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+				builder.fields.add(new MemberEntry(access, name, descriptor));
+				return null;
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				builder.methods.add(new MemberEntry(access, name, descriptor));
+				return null;
+			}
+
+			@Override
+			public void visitInnerClass(String name, String outerName, String innerName, int access) {
+				builder.innerClasses.add(new InnerClassEntry(name, outerName, innerName, access));
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+		return builder.build();
+	}
+
+	@Nullable
+	private static ClassIndex readCache(Path path) {
+		if (Files.notExists(path)) {
+			return null;
+		}
+
+		try {
+			// Read onto the heap rather than mapping the file, a mapping would keep the file locked on Windows
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				return null;
+			}
+
+			String[] strings = new String[readLength(buffer)];
+
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[readLength(buffer)];
+				buffer.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			int classCount = readLength(buffer);
+			Map<String, ClassEntry> classes = new LinkedHashMap<>(classCount * 2);
+
+			for (int i = 0; i < classCount; i++) {
+				ClassEntryBuilder builder = new ClassEntryBuilder();
+				builder.name = strings[buffer.getInt()];
+				builder.access = buffer.getInt();
+				builder.superName = readNullableString(buffer, strings);
+				String[] interfaces = new String[readLength(buffer)];
+
+				for (int j = 0; j < interfaces.length; j++) {
+					interfaces[j] = strings[buffer.getInt()];
+				}
+
+				builder.interfaces = List.of(interfaces);
+				readMembers(buffer, strings, builder.fields);
+				readMembers(buffer, strings, builder.methods);
+				int innerClassCount = buffer.getInt();
+
+				for (int j = 0; j < innerClassCount; j++) {
+					builder.innerClasses.add(new InnerClassEntry(strings[buffer.getInt()], readNullableString(buffer, strings), readNullableString(buffer, strings), buffer.getInt()));
+				}
+
+				ClassEntry classEntry = builder.build();
+				classes.put(classEntry.name(), classEntry);
+			}
+
+			return new ClassIndex(classes);
+		} catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+			// A broken index is simply created again
+			return null;
+		}
+	}
+
+	// Every counted item takes at least one byte, so a larger count can only come from a broken file
+	private static int readLength(ByteBuffer buffer) {
+		int length = buffer.getInt();
+
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+
+		return length;
+	}
+
+	private static void readMembers(ByteBuffer buffer, String[] strings, List<MemberEntry> members) {
+		int count = buffer.getInt();
+
+		for (int i = 0; i < count; i++) {
+			members.add(new MemberEntry(buffer.getInt(), strings[buffer.getInt()], strings[buffer.getInt()]));
+		}
+	}
+
+	@Nullable
+	private static String readNullableString(ByteBuffer buffer, String[] strings) {
+		int index = buffer.getInt();
+		return index < 0 ? null : strings[index];
+	}
+
+	private void write(Path path) throws IOException {
+		// Names and descriptors repeat a lot, so every string is only stored once
+		Map<String, Integer> stringIds = new LinkedHashMap<>();
+
+		for (ClassEntry classEntry : classes.values()) {
+			classEntry.forEachString(string -> stringIds.putIfAbsent(string, stringIds.size()));
+		}
+
+		CacheStore.publish(path, temp -> write(temp, stringIds));
+	}
+
+	private void write(Path path, Map<String, Integer> stringIds) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(stringIds.size());
+
+			for (String string : stringIds.keySet()) {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			out.writeInt(classes.size());
+
+			for (ClassEntry classEntry : classes.values()) {
+				out.writeInt(stringIds.get(classEntry.name()));
+				out.writeInt(classEntry.access());
+				out.writeInt(classEntry.superName() != null ? stringIds.get(classEntry.superName()) : -1);
+				out.writeInt(classEntry.interfaces().size());
+
+				for (String itf : classEntry.interfaces()) {
+					out.writeInt(stringIds.get(itf));
+				}
+
+				writeMembers(out, stringIds, classEntry.fields());
+				writeMembers(out, stringIds, classEntry.methods());
+				out.writeInt(classEntry.innerClasses().size());
+
+				for (InnerClassEntry innerClass : classEntry.innerClasses()) {
+					out.writeInt(stringIds.get(innerClass.name()));
+					out.writeInt(innerClass.outerName() != null ? stringIds.get(innerClass.outerName()) : -1);
+					out.writeInt(innerClass.innerName() != null ? stringIds.get(innerClass.innerName()) : -1);
+					out.writeInt(innerClass.access());
+				}
+			}
+		}
+	}
+
+	private static void writeMembers(DataOutputStream out, Map<String, Integer> stringIds, List<MemberEntry> members) throws IOException {
+		out.writeInt(members.size());
+
+		for (MemberEntry member : members) {
+			out.writeInt(member.access());
+			out.writeInt(stringIds.get(member.name()));
+			out.writeInt(stringIds.get(member.descriptor()));
+		}
+	}
+
+	public Collection<ClassEntry> getClasses() {
+		return Collections.unmodifiableCollection(classes.values());
+	}
+
+	public Set<String> getClassNames() {
+		return Collections.unmodifiableSet(classes.keySet());
+	}
+
+	@Nullable
+	public ClassEntry getClassEntry(String name) {
+		return classes.get(name);
+	}
+
+	/**
+	 * Gets the names of all nested classes, being every class with a {@code $} in its name.
+	 *
+	 * @return a new mutable set of the nested class names
+	 */
+	public Set<String> getNestedClassNames() {
+		Set<String> names = new HashSet<>();
+
+		for (String name : classes.keySet()) {
+			if (name.contains("$")) {
+				names.add(name);
+			}
+		}
+
+		return names;
+	}
+
+	public record ClassEntry(String name, int access, @Nullable String superName, List<String> interfaces, List<MemberEntry> fields, List<MemberEntry> methods, List<InnerClassEntry> innerClasses) {
+		@Nullable
+		public MemberEntry getField(String name, String descriptor) {
+			return find(fields, name, descriptor);
+		}
+
+		@Nullable
+		public MemberEntry getMethod(String name, String descriptor) {
+			return find(methods, name, descriptor);
+		}
+
+		@Nullable
+		private static MemberEntry find(List<MemberEntry> members, String name, String descriptor) {
+			for (MemberEntry member : members) {
+				if (member.name().equals(name) && member.descriptor().equals(descriptor)) {
+					return member;
+				}
+			}
+
+			return null;
+		}
+
+		private void forEachString(Consumer<String> action) {
+			action.accept(name);
+			if (superName != null) action.accept(superName);
+			interfaces.forEach(action);
+
+			for (MemberEntry member : fields) {
+				action.accept(member.name());
+				action.accept(member.descriptor());
+			}
+
+			for (MemberEntry member : methods) {
+				action.accept(member.name());
+				action.accept(member.descriptor());
+			}
+
+			for (InnerClassEntry innerClass : innerClasses) {
+				action.accept(innerClass.name());
+				if (innerClass.outerName() != null) action.accept(innerClass.outerName());
+				if (innerClass.innerName() != null) action.accept(innerClass.innerName());
+			}
+		}
+	}
+
+	public record MemberEntry(int access, String name, String descriptor) {
+	}
+
+	public record InnerClassEntry(String name, @Nullable String outerName, @Nullable String innerName, int access) {
+	}
+
+	private static final class ClassEntryBuilder {
+		private final List<MemberEntry> fields = new ArrayList<>();
+		private final List<MemberEntry> methods = new ArrayList<>();
+		private final List<InnerClassEntry> innerClasses = new ArrayList<>();
+		private String name;
+		private int access;
+		private String superName;
+		private List<String> interfaces = List.of();
+
+		private ClassEntry build() {
+			return new ClassEntry(name, access, superName, interfaces, List.copyOf(fields), List.copyOf(methods), List.copyOf(innerClasses));
+		}
+	}
+
+	private record LoadedKey(Path path, long size, long lastModified) {
+	}
+}
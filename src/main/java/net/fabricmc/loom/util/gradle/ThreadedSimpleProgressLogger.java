@@ -24,13 +24,22 @@
 
 package net.fabricmc.loom.util.gradle;
 
-import java.io.IOException;
-
 import net.fabricmc.loom.util.IOStringConsumer;
+import net.fabricmc.loom.util.ipc.IPCClient;
 
-public record ThreadedSimpleProgressLogger(IOStringConsumer parent) implements IOStringConsumer {
+/**
+ * Sends progress to a {@link ThreadedProgressLoggerConsumer}, only the latest progress of every thread is sent per flush.
+ */
+public record ThreadedSimpleProgressLogger(IPCClient client) implements IOStringConsumer {
 	@Override
-	public void accept(String data) throws IOException {
-		parent.accept("%d::%s".formatted(Thread.currentThread().getId(), data));
+	public void accept(String data) {
+		String threadId = Long.toString(Thread.currentThread().getId());
+		String message = "%s::%s".formatted(threadId, data);
+
+		if (data.equals(ThreadedProgressLoggerConsumer.CLOSE_LOGGERS)) {
+			client.accept(message);
+		} else {
+			client.acceptCoalesced(threadId, message);
+		}
 	}
 }
@@ -24,22 +24,56 @@
 
 package net.fabricmc.loom.util.ipc;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import net.fabricmc.loom.util.IOStringConsumer;
 
+/**
+ * Sends messages to an {@link IPCServer}.
+ *
+ * <p>Messages are batched and flushed every {@value #FLUSH_INTERVAL_MS} ms. Messages sent with
+ * {@link #acceptCoalesced(String, String)} replace any unsent message with the same key, so a
+ * chatty producer costs at most one message per key and flush. Failures of the scheduled flushes are
+ * rethrown by {@link #close()}.
+ */
 public final class IPCClient implements IOStringConsumer, AutoCloseable {
+	static final int CLOSE = -1;
+	static final int FLUSH_INTERVAL_MS = 100;
+
 	private final Path path;
 	private final SocketChannel socketChannel;
+	private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Loom IPC flusher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// Either plain messages, or coalesced ones under their key; insertion order is preserved
+	private final Map<Object, String> pending = new LinkedHashMap<>();
+	private IOException failure;
 
 	public IPCClient(Path path) throws IOException {
+		this(path, FLUSH_INTERVAL_MS);
+	}
+
+	IPCClient(Path path, long flushIntervalMs) throws IOException {
 		this.path = path;
 		socketChannel = setupChannel();
+		flusher.scheduleWithFixedDelay(this::scheduledFlush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
 	}
 
 	private SocketChannel setupChannel() throws IOException {
@@ -48,10 +82,67 @@ public final class IPCClient implements IOStringConsumer, AutoCloseable {
 	}
 
 	@Override
-	public void accept(String s) throws IOException {
-		synchronized (socketChannel) {
-			ByteBuffer buf = ByteBuffer.wrap((s + "\n").getBytes(StandardCharsets.UTF_8));
+	public void accept(String s) {
+		synchronized (pending) {
+			pending.put(new Object(), s);
+		}
+	}
+
+	/**
+	 * Queues a message that replaces the unsent message with the same key, if any. The message is queued
+	 * after every other unsent message, so it is never received before messages that were sent earlier.
+	 */
+	public void acceptCoalesced(String key, String s) {
+		synchronized (pending) {
+			pending.remove(key);
+			pending.put(key, s);
+		}
+	}
+
+	private void scheduledFlush() {
+		// Throwing would cancel every later flush, so the failure is kept for close()
+		try {
+			flush();
+		} catch (IOException e) {
+			recordFailure(e);
+		}
+	}
+
+	private synchronized void recordFailure(IOException e) {
+		if (failure == null) {
+			failure = e;
+		} else {
+			failure.addSuppressed(e);
+		}
+	}
 
+	private void flush() throws IOException {
+		List<String> messages;
+
+		synchronized (pending) {
+			if (pending.isEmpty()) {
+				return;
+			}
+
+			messages = new ArrayList<>(pending.values());
+			pending.clear();
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(messages.size());
+
+		for (String message : messages) {
+			byte[] data = message.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(data.length);
+			out.write(data);
+		}
+
+		write(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	private void write(ByteBuffer buf) throws IOException {
+		synchronized (socketChannel) {
 			while (buf.hasRemaining()) {
 				socketChannel.write(buf);
 			}
@@ -60,8 +151,23 @@ public final class IPCClient implements IOStringConsumer, AutoCloseable {
 
 	@Override
 	public void close() throws Exception {
-		synchronized (socketChannel) {
-			socketChannel.close();
+		flusher.shutdown();
+		flusher.awaitTermination(10, TimeUnit.SECONDS);
+
+		try (socketChannel) {
+			flush();
+			write(ByteBuffer.allocate(4).putInt(0, CLOSE));
+
+			// Wait for the server to acknowledge that every message was read
+			socketChannel.read(ByteBuffer.allocate(1));
+		} catch (IOException e) {
+			recordFailure(e);
+		}
+
+		synchronized (this) {
+			if (failure != null) {
+				throw new IOException("Failed to send IPC messages", failure);
+			}
 		}
 	}
 }
@@ -24,27 +24,37 @@
 
 package net.fabricmc.loom.util.ipc;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.StandardProtocolFamily;
 import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.Scanner;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+/**
+ * Receives the message batches of an {@link IPCClient}, blocking while no data is available.
+ */
 public class IPCServer implements AutoCloseable {
 	private final ExecutorService loggerReceiverService = Executors.newSingleThreadExecutor();
 	private final Path path;
 	private final Consumer<String> consumer;
 
 	private final CountDownLatch startupLock = new CountDownLatch(1);
+	private volatile ServerSocketChannel serverChannel;
+	private volatile boolean connected;
 
 	public IPCServer(Path path, Consumer<String> consumer) {
 		this.path = path;
@@ -63,26 +73,69 @@ public class IPCServer implements AutoCloseable {
 		UnixDomainSocketAddress address = UnixDomainSocketAddress.of(path);
 
 		try (ServerSocketChannel serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			this.serverChannel = serverChannel;
 			serverChannel.bind(address);
 
 			startupLock.countDown();
 
-			try (SocketChannel clientChannel = serverChannel.accept();
-					Scanner scanner = new Scanner(clientChannel, StandardCharsets.UTF_8)) {
-				while (!Thread.currentThread().isInterrupted()) {
-					if (scanner.hasNextLine()) {
-						this.consumer.accept(scanner.nextLine());
-					}
-				}
+			try (SocketChannel clientChannel = serverChannel.accept()) {
+				connected = true;
+				receive(clientChannel);
 			}
+		} catch (AsynchronousCloseException e) {
+			// Closed before a client connected
 		} catch (IOException e) {
 			throw new UncheckedIOException("Failed to listen for IPC messages", e);
 		}
 	}
 
+	private void receive(SocketChannel clientChannel) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(clientChannel)));
+
+		while (true) {
+			int count;
+
+			try {
+				count = in.readInt();
+			} catch (EOFException e) {
+				// The client went away without saying goodbye
+				return;
+			}
+
+			if (count == IPCClient.CLOSE) {
+				ByteBuffer ack = ByteBuffer.allocate(1);
+
+				while (ack.hasRemaining()) {
+					clientChannel.write(ack);
+				}
+
+				return;
+			}
+
+			for (int i = 0; i < count; i++) {
+				byte[] data = new byte[in.readInt()];
+				in.readFully(data);
+				consumer.accept(new String(data, StandardCharsets.UTF_8));
+			}
+		}
+	}
+
 	@Override
 	public void close() throws InterruptedException {
-		loggerReceiverService.shutdownNow();
-		loggerReceiverService.awaitTermination(10, TimeUnit.SECONDS);
+		loggerReceiverService.shutdown();
+
+		// Give a connected client the chance to finish its shutdown handshake
+		if (!connected || !loggerReceiverService.awaitTermination(10, TimeUnit.SECONDS)) {
+			try {
+				if (serverChannel != null) {
+					serverChannel.close();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to close IPC server", e);
+			}
+
+			loggerReceiverService.shutdownNow();
+			loggerReceiverService.awaitTermination(10, TimeUnit.SECONDS);
+		}
 	}
 }
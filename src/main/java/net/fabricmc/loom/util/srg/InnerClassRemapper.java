@@ -25,19 +25,20 @@
 package net.fabricmc.loom.util.srg;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.Enumeration;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import dev.architectury.tinyremapper.IMappingProvider;
 
-import net.fabricmc.loom.util.FileSystemUtil;
 import net.fabricmc.mappingio.tree.MappingTree;
 
 public class InnerClassRemapper {
@@ -47,24 +48,24 @@ public class InnerClassRemapper {
 		};
 	}
 
+	/**
+	 * Reads the names of the nested classes of a jar from its entry names, without reading the classes.
+	 */
 	public static Set<String> readClassNames(Path jar) {
 		Set<String> set = new HashSet<>();
 
-		try (FileSystemUtil.Delegate system = FileSystemUtil.getJarFileSystem(jar, false)) {
-			Iterator<Path> iterator = Files.walk(system.get().getPath("/")).iterator();
+		try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
 
-			while (iterator.hasNext()) {
-				Path path = iterator.next();
-				String name = path.toString();
-				if (name.startsWith("/")) name = name.substring(1);
+			while (entries.hasMoreElements()) {
+				String name = entries.nextElement().getName();
 
-				if (!Files.isDirectory(path) && name.contains("$") && name.endsWith(".class")) {
-					String className = name.substring(0, name.length() - 6);
-					set.add(className);
+				if (name.contains("$") && name.endsWith(".class")) {
+					set.add(name.substring(0, name.length() - 6));
 				}
 			}
 		} catch (IOException e) {
-			throw new RuntimeException(e);
+			throw new UncheckedIOException("Failed to read class names of " + jar, e);
 		}
 
 		return set;
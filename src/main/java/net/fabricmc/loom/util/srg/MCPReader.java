@@ -24,7 +24,11 @@
 
 package net.fabricmc.loom.util.srg;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
@@ -40,6 +44,8 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.opencsv.CSVReader;
 import com.opencsv.exceptions.CsvValidationException;
 import org.apache.commons.io.IOUtils;
@@ -52,6 +58,9 @@ import org.cadixdev.lorenz.model.MethodMapping;
 import org.cadixdev.lorenz.model.TopLevelClassMapping;
 import org.jetbrains.annotations.Nullable;
 
+import net.fabricmc.loom.util.CacheStore;
+import net.fabricmc.loom.util.Checksum;
+import net.fabricmc.loom.util.ThreadingUtils;
 import net.fabricmc.mappingio.MappingReader;
 import net.fabricmc.mappingio.tree.MappingTree;
 import net.fabricmc.mappingio.tree.MemoryMappingTree;
@@ -65,29 +74,68 @@ import net.fabricmc.stitch.commands.tinyv2.TinyV2Reader;
 public class MCPReader {
 	private final Path intermediaryTinyPath;
 	private final Path srgTsrgPath;
+	@Nullable
+	private final Path cacheDirectory;
 
 	public MCPReader(Path intermediaryTinyPath, Path srgTsrgPath) {
+		this(intermediaryTinyPath, srgTsrgPath, null);
+	}
+
+	/**
+	 * Creates a new MCP reader.
+	 *
+	 * @param intermediaryTinyPath the intermediary mappings
+	 * @param srgTsrgPath          the srg mappings
+	 * @param cacheDirectory       the directory storing the parsed MCP data for each set of inputs, may be null to disable caching
+	 */
+	public MCPReader(Path intermediaryTinyPath, Path srgTsrgPath, @Nullable Path cacheDirectory) {
 		this.intermediaryTinyPath = intermediaryTinyPath;
 		this.srgTsrgPath = srgTsrgPath;
+		this.cacheDirectory = cacheDirectory;
 	}
 
 	public TinyFile read(Path mcpJar) throws IOException {
-		Map<MemberToken, String> srgTokens = readSrg();
 		TinyFile intermediaryTiny = TinyV2Reader.read(intermediaryTinyPath);
-		Map<String, String> intermediaryToMCPMap = createIntermediaryToMCPMap(intermediaryTiny, srgTokens);
-		Map<String, String[]> intermediaryToDocsMap = new HashMap<>();
-		Map<String, Map<Integer, String>> intermediaryToParamsMap = new HashMap<>();
+		Path cacheFile = getCacheFile(mcpJar);
+		McpData data = cacheFile != null ? McpData.readCache(cacheFile) : null;
 
-		try {
-			injectMcp(mcpJar, intermediaryToMCPMap, intermediaryToDocsMap, intermediaryToParamsMap);
-		} catch (CsvValidationException e) {
-			throw new RuntimeException(e);
+		if (data == null) {
+			Map<MemberToken, String> srgTokens = readSrg();
+			Map<String, String> intermediaryToMCPMap = createIntermediaryToMCPMap(intermediaryTiny, srgTokens);
+
+			try {
+				data = injectMcp(mcpJar, intermediaryToMCPMap);
+			} catch (CsvValidationException e) {
+				throw new RuntimeException(e);
+			}
+
+			if (cacheFile != null) {
+				data.writeCache(cacheFile);
+			}
 		}
 
-		mergeTokensIntoIntermediary(intermediaryTiny, intermediaryToMCPMap, intermediaryToDocsMap, intermediaryToParamsMap);
+		mergeTokensIntoIntermediary(intermediaryTiny, data.names(), data.docs(), data.params());
 		return intermediaryTiny;
 	}
 
+	/**
+	 * Gets the cache file for the MCP data, keyed by the contents of all inputs.
+	 */
+	@Nullable
+	private Path getCacheFile(Path mcpJar) {
+		if (cacheDirectory == null) {
+			return null;
+		}
+
+		Hasher hasher = Hashing.sha256().newHasher();
+
+		for (Path input : new Path[] {mcpJar, intermediaryTinyPath, srgTsrgPath}) {
+			hasher.putBytes(Checksum.sha256(input.toFile()));
+		}
+
+		return cacheDirectory.resolve("mcp-" + hasher.hash().toString().substring(0, 16) + ".bin");
+	}
+
 	private Map<String, String> createIntermediaryToMCPMap(TinyFile tiny, Map<MemberToken, String> officialToMCP) {
 		Map<String, String> map = new HashMap<>();
 
@@ -223,89 +271,121 @@ public class MCPReader {
 		}
 	}
 
-	private void injectMcp(Path mcpJar, Map<String, String> intermediaryToSrgMap, Map<String, String[]> intermediaryToDocsMap, Map<String, Map<Integer, String>> intermediaryToParamsMap)
-			throws IOException, CsvValidationException {
+	private McpData injectMcp(Path mcpJar, Map<String, String> intermediaryToSrgMap) throws IOException, CsvValidationException {
 		Map<String, List<String>> srgToIntermediary = inverseMap(intermediaryToSrgMap);
-		Map<String, List<String>> simpleSrgToIntermediary = new HashMap<>();
-		Pattern methodPattern = Pattern.compile("(func_\\d*)_.*");
+		// Params only reference their method by the numeric srg id, so index the methods by it
+		Map<Integer, List<String>> srgIdToIntermediary = new HashMap<>();
 
 		for (Map.Entry<String, List<String>> entry : srgToIntermediary.entrySet()) {
-			Matcher matcher = methodPattern.matcher(entry.getKey());
+			int srgId = getMethodSrgId(entry.getKey());
 
-			if (matcher.matches()) {
-				simpleSrgToIntermediary.put(matcher.group(1), entry.getValue());
+			if (srgId >= 0) {
+				srgIdToIntermediary.put(srgId, entry.getValue());
 			}
 		}
 
+		Map<String, String> fieldNames = new HashMap<>();
+		Map<String, String[]> fieldDocs = new HashMap<>();
+		Map<String, String> methodNames = new HashMap<>();
+		Map<String, String[]> methodDocs = new HashMap<>();
+		Map<String, Map<Integer, String>> params = new HashMap<>();
+
 		try (FileSystem fs = FileSystems.newFileSystem(mcpJar, (ClassLoader) null)) {
 			Path fields = fs.getPath("fields.csv");
 			Path methods = fs.getPath("methods.csv");
-			Path params = fs.getPath("params.csv");
-			Pattern paramsPattern = Pattern.compile("p_[^\\d]*(\\d+)_(\\d)+_?");
+			Path paramsCsv = fs.getPath("params.csv");
+
+			// The csv files are independent from each other, so they can be parsed at the same time
+			ThreadingUtils.run(
+					() -> readMembers(fields, srgToIntermediary, fieldNames, fieldDocs),
+					() -> readMembers(methods, srgToIntermediary, methodNames, methodDocs),
+					() -> {
+						if (Files.exists(paramsCsv)) {
+							readParams(paramsCsv, srgIdToIntermediary, params);
+						}
+					}
+			);
+		}
+
+		Map<String, String> names = new HashMap<>(intermediaryToSrgMap);
+		names.putAll(fieldNames);
+		names.putAll(methodNames);
+		Map<String, String[]> docs = new HashMap<>(fieldDocs);
+		docs.putAll(methodDocs);
+		return new McpData(names, docs, params);
+	}
+
+	private static void readMembers(Path csv, Map<String, List<String>> srgToIntermediary, Map<String, String> names, Map<String, String[]> docs)
+			throws IOException, CsvValidationException {
+		try (CSVReader reader = new CSVReader(Files.newBufferedReader(csv, StandardCharsets.UTF_8))) {
+			reader.readNext();
+			String[] line;
 
-			try (CSVReader reader = new CSVReader(Files.newBufferedReader(fields, StandardCharsets.UTF_8))) {
-				reader.readNext();
-				String[] line;
+			while ((line = reader.readNext()) != null) {
+				List<String> intermediaryMembers = srgToIntermediary.get(line[0]);
 
-				while ((line = reader.readNext()) != null) {
-					List<String> intermediaryField = srgToIntermediary.get(line[0]);
-					String[] docs = line[3].split("\n");
+				if (intermediaryMembers != null) {
+					String[] memberDocs = line[3].split("\n");
 
-					if (intermediaryField != null) {
-						for (String s : intermediaryField) {
-							intermediaryToSrgMap.put(s, line[1]);
+					for (String s : intermediaryMembers) {
+						names.put(s, line[1]);
 
-							if (!line[3].trim().isEmpty() && docs.length > 0) {
-								intermediaryToDocsMap.put(s, docs);
-							}
+						if (!line[3].trim().isEmpty() && memberDocs.length > 0) {
+							docs.put(s, memberDocs);
 						}
 					}
 				}
 			}
+		}
+	}
+
+	private static void readParams(Path csv, Map<Integer, List<String>> srgIdToIntermediary, Map<String, Map<Integer, String>> params)
+			throws IOException, CsvValidationException {
+		Pattern paramsPattern = Pattern.compile("p_[^\\d]*(\\d+)_(\\d)+_?");
+
+		try (CSVReader reader = new CSVReader(Files.newBufferedReader(csv, StandardCharsets.UTF_8))) {
+			reader.readNext();
+			String[] line;
 
-			try (CSVReader reader = new CSVReader(Files.newBufferedReader(methods, StandardCharsets.UTF_8))) {
-				reader.readNext();
-				String[] line;
+			while ((line = reader.readNext()) != null) {
+				Matcher param = paramsPattern.matcher(line[0]);
 
-				while ((line = reader.readNext()) != null) {
-					List<String> intermediaryMethod = srgToIntermediary.get(line[0]);
-					String[] docs = line[3].split("\n");
+				if (param.matches()) {
+					String named = line[1];
+					int lvIndex = Integer.parseInt(param.group(2));
+					List<String> intermediaryMethod = srgIdToIntermediary.get(Integer.parseInt(param.group(1)));
 
 					if (intermediaryMethod != null) {
 						for (String s : intermediaryMethod) {
-							intermediaryToSrgMap.put(s, line[1]);
-
-							if (!line[3].trim().isEmpty() && docs.length > 0) {
-								intermediaryToDocsMap.put(s, docs);
-							}
+							params.computeIfAbsent(s, s1 -> new HashMap<>()).put(lvIndex, named);
 						}
 					}
 				}
 			}
+		}
+	}
 
-			if (Files.exists(params)) {
-				try (CSVReader reader = new CSVReader(Files.newBufferedReader(params, StandardCharsets.UTF_8))) {
-					reader.readNext();
-					String[] line;
-
-					while ((line = reader.readNext()) != null) {
-						Matcher param = paramsPattern.matcher(line[0]);
-
-						if (param.matches()) {
-							String named = line[1];
-							String srgMethodStartWith = "func_" + param.group(1);
-							int lvIndex = Integer.parseInt(param.group(2));
-							List<String> intermediaryMethod = simpleSrgToIntermediary.get(srgMethodStartWith);
-
-							if (intermediaryMethod != null) {
-								for (String s : intermediaryMethod) {
-									intermediaryToParamsMap.computeIfAbsent(s, s1 -> new HashMap<>()).put(lvIndex, named);
-								}
-							}
-						}
-					}
-				}
-			}
+	/**
+	 * Gets the numeric id of an srg method name such as {@code func_12345_a}.
+	 *
+	 * @param name the srg name
+	 * @return the id, or -1 if the name is not an srg method name
+	 */
+	private static int getMethodSrgId(String name) {
+		if (!name.startsWith("func_")) {
+			return -1;
+		}
+
+		int end = name.indexOf('_', 5);
+
+		if (end <= 5) {
+			return -1;
+		}
+
+		try {
+			return Integer.parseInt(name, 5, end, 10);
+		} catch (NumberFormatException e) {
+			return -1;
 		}
 	}
 
@@ -360,4 +440,127 @@ public class MCPReader {
 		METHOD,
 		FIELD
 	}
+
+	/**
+	 * The names, docs and params read from an MCP jar, keyed by intermediary names.
+	 */
+	private record McpData(Map<String, String> names, Map<String, String[]> docs, Map<String, Map<Integer, String>> params) {
+		private static final int CACHE_VERSION = 1;
+
+		@Nullable
+		static McpData readCache(Path path) {
+			if (Files.notExists(path)) {
+				return null;
+			}
+
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+				// No count or length can be larger than the file, a larger one means the cache is corrupt
+				long limit = Files.size(path);
+
+				if (in.readInt() != CACHE_VERSION) {
+					return null;
+				}
+
+				int nameCount = readCount(in, limit);
+				Map<String, String> names = new HashMap<>(nameCount * 2);
+
+				for (int i = 0; i < nameCount; i++) {
+					names.put(readString(in, limit), readString(in, limit));
+				}
+
+				int docCount = readCount(in, limit);
+				Map<String, String[]> docs = new HashMap<>(docCount * 2);
+
+				for (int i = 0; i < docCount; i++) {
+					String key = readString(in, limit);
+					String[] lines = new String[readCount(in, limit)];
+
+					for (int j = 0; j < lines.length; j++) {
+						lines[j] = readString(in, limit);
+					}
+
+					docs.put(key, lines);
+				}
+
+				int paramsCount = readCount(in, limit);
+				Map<String, Map<Integer, String>> params = new HashMap<>(paramsCount * 2);
+
+				for (int i = 0; i < paramsCount; i++) {
+					String key = readString(in, limit);
+					int count = readCount(in, limit);
+					Map<Integer, String> methodParams = new HashMap<>();
+
+					for (int j = 0; j < count; j++) {
+						methodParams.put(in.readInt(), readString(in, limit));
+					}
+
+					params.put(key, methodParams);
+				}
+
+				return new McpData(names, docs, params);
+			} catch (IOException | RuntimeException e) {
+				// A broken cache is simply regenerated
+				return null;
+			}
+		}
+
+		void writeCache(Path path) throws IOException {
+			CacheStore.publish(path, temp -> {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+					out.writeInt(CACHE_VERSION);
+					out.writeInt(names.size());
+
+					for (Map.Entry<String, String> entry : names.entrySet()) {
+						writeString(out, entry.getKey());
+						writeString(out, entry.getValue());
+					}
+
+					out.writeInt(docs.size());
+
+					for (Map.Entry<String, String[]> entry : docs.entrySet()) {
+						writeString(out, entry.getKey());
+						out.writeInt(entry.getValue().length);
+
+						for (String line : entry.getValue()) {
+							writeString(out, line);
+						}
+					}
+
+					out.writeInt(params.size());
+
+					for (Map.Entry<String, Map<Integer, String>> entry : params.entrySet()) {
+						writeString(out, entry.getKey());
+						out.writeInt(entry.getValue().size());
+
+						for (Map.Entry<Integer, String> param : entry.getValue().entrySet()) {
+							out.writeInt(param.getKey());
+							writeString(out, param.getValue());
+						}
+					}
+				}
+			});
+		}
+
+		private static int readCount(DataInputStream in, long limit) throws IOException {
+			int count = in.readInt();
+
+			if (count < 0 || count > limit) {
+				throw new IOException("Invalid count " + count);
+			}
+
+			return count;
+		}
+
+		private static String readString(DataInputStream in, long limit) throws IOException {
+			byte[] bytes = new byte[readCount(in, limit)];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		private static void writeString(DataOutputStream out, String string) throws IOException {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
 }
@@ -26,7 +26,6 @@ package net.fabricmc.loom.util.srg;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -34,10 +33,11 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -48,7 +48,10 @@ import org.apache.commons.io.IOUtils;
 import org.gradle.api.logging.Logger;
 import org.jetbrains.annotations.Nullable;
 
+import net.fabricmc.loom.util.CacheStore;
+import net.fabricmc.loom.util.ThreadingUtils;
 import net.fabricmc.loom.util.function.CollectionUtil;
+import net.fabricmc.loom.util.function.IoConsumer;
 import net.fabricmc.mappingio.FlatMappingVisitor;
 import net.fabricmc.mappingio.MappingReader;
 import net.fabricmc.mappingio.adapter.RegularAsFlatMappingVisitor;
@@ -61,6 +64,10 @@ import net.fabricmc.mappingio.tree.MemoryMappingTree;
 /**
  * Utilities for merging SRG mappings.
  *
+ * <p>Every SRG class is matched against the tiny mappings on its own worker thread. The workers only record
+ * the visits they would make, which are then replayed into the output tree in the original class order,
+ * so the result does not depend on the scheduling of the workers.
+ *
  * @author Juuz
  */
 public final class SrgMerger {
@@ -70,10 +77,9 @@ public final class SrgMerger {
 	private final MemoryMappingTree src;
 	private final MemoryMappingTree output;
 	private final FlatMappingVisitor flatOutput;
-	private final List<Runnable> postProcesses = new ArrayList<>();
 	private final boolean lenient;
 	private final boolean legacy;
-	private final Set<String> methodSrgNames = new HashSet<>();
+	private final Set<String> methodSrgNames = ConcurrentHashMap.newKeySet();
 
 	public SrgMerger(Logger logger, Path srg, @Nullable Supplier<Path> mojmap, Path tiny, boolean lenient, boolean legacy) throws IOException {
 		this.logger = logger;
@@ -94,46 +100,71 @@ public final class SrgMerger {
 	}
 
 	public MemoryMappingTree merge() throws IOException {
+		List<ThreadingUtils.UnsafeCallable<ClassMerge>> jobs = new ArrayList<>();
+
 		for (MappingTree.ClassMapping klass : this.srg.getClasses()) {
-			classToTiny(klass);
+			jobs.add(() -> classToTiny(klass));
 		}
 
+		List<ClassMerge> merges;
+
 		try {
-			for (Runnable process : postProcesses) {
-				process.run();
+			merges = ThreadingUtils.get(jobs);
+		} catch (RuntimeException e) {
+			// Report missing mappings as they were reported before merging in parallel, not wrapped by the executor
+			for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+				if (cause instanceof MappingException mappingException) {
+					throw mappingException;
+				}
+			}
+
+			throw e;
+		}
+
+		for (ClassMerge merge : merges) {
+			for (IoConsumer<FlatMappingVisitor> visit : merge.visits()) {
+				visit.accept(flatOutput);
+			}
+		}
+
+		// The post processes have to run after every class has been visited, as they depend on methodSrgNames
+		for (ClassMerge merge : merges) {
+			for (IoConsumer<FlatMappingVisitor> visit : merge.postVisits()) {
+				visit.accept(flatOutput);
 			}
-		} catch (UncheckedIOException e) {
-			throw e.getCause();
 		}
 
 		return output;
 	}
 
 	/**
-	 * Merges SRG mappings with a tiny mappings tree through the obf names.
+	 * Writes a merged tree to a tiny v2 file on a background thread.
 	 *
-	 * @param srg     the SRG file in .tsrg format
-	 * @param mojmap  the path to the mojmap file used for generating mojmap+srg names, may be null
-	 * @param tiny    the tiny file
-	 * @param out     the output file, will be in tiny v2
-	 * @param lenient whether to ignore missing tiny mapping
-	 * @param legacy  treat any method as mapped, even when it is lacking the 'func_' prefix
-	 * @throws IOException      if an IO error occurs while reading or writing the mappings
-	 * @throws MappingException if the input tiny tree's default namespace is not 'official'
-	 *                          or if an element mentioned in the SRG file does not have tiny mappings
+	 * <p>The file is written to a temporary sibling first and moved into place once complete,
+	 * so an interrupted build never leaves a truncated mappings file behind.
+	 * The tree must not be modified until the returned future has completed.
+	 *
+	 * @param logger the logger
+	 * @param tree   the merged mapping tree
+	 * @param out    the output file, will be in tiny v2
+	 * @return a future completing once the file has been written
 	 */
-	public static void mergeSrg(Logger logger, @Nullable Supplier<Path> mojmap, Path srg, Path tiny, Path out, boolean lenient, boolean legacy)
-			throws IOException, MappingException {
-		Stopwatch stopwatch = Stopwatch.createStarted();
-		MemoryMappingTree tree = mergeSrg(logger, mojmap, srg, tiny, lenient, legacy);
-
-		try (Tiny2Writer writer = new Tiny2Writer(Files.newBufferedWriter(out), false)) {
-			tree.accept(writer);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	public static CompletableFuture<Void> writeAsync(Logger logger, MappingTree tree, Path out) {
+		return CompletableFuture.runAsync(() -> {
+			Stopwatch stopwatch = Stopwatch.createStarted();
+
+			try {
+				CacheStore.publish(out, temp -> {
+					try (Tiny2Writer writer = new Tiny2Writer(Files.newBufferedWriter(temp, StandardCharsets.UTF_8), false)) {
+						tree.accept(writer);
+					}
+				});
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to write merged srg mappings to " + out, e);
+			}
 
-		logger.info(":merged srg mappings in " + stopwatch.stop());
+			logger.info(":wrote srg mappings in " + stopwatch.stop());
+		});
 	}
 
 	/**
@@ -151,19 +182,26 @@ public final class SrgMerger {
 	 */
 	public static MemoryMappingTree mergeSrg(Logger logger, @Nullable Supplier<Path> mojmap, Path srg, Path tiny, boolean lenient, boolean legacy)
 			throws IOException, MappingException {
-		return new SrgMerger(logger, srg, mojmap, tiny, lenient, legacy).merge();
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		MemoryMappingTree tree = new SrgMerger(logger, srg, mojmap, tiny, lenient, legacy).merge();
+		logger.info(":merged srg mappings in " + stopwatch.stop());
+		return tree;
 	}
 
 	private MemoryMappingTree readSrg(Path srg, @Nullable Supplier<Path> mojmap) throws IOException {
 		try (BufferedReader reader = Files.newBufferedReader(srg)) {
-			String content = IOUtils.toString(reader);
+			// Peek at the header without reading the whole file into memory
+			char[] header = new char[5];
+			reader.mark(header.length);
+			int read = IOUtils.read(reader, header);
+			reader.reset();
 
-			if (content.startsWith("tsrg2") && mojmap != null) {
+			if (read == header.length && "tsrg2".equals(new String(header)) && mojmap != null) {
 				addRegardlessSrgs(mojmap);
 			}
 
 			MemoryMappingTree tsrg = new MemoryMappingTree();
-			TsrgReader.read(new StringReader(content), tsrg);
+			TsrgReader.read(reader, tsrg);
 			return tsrg;
 		}
 	}
@@ -198,14 +236,15 @@ public final class SrgMerger {
 		return tree;
 	}
 
-	private void classToTiny(MappingTree.ClassMapping klass) throws IOException {
+	private ClassMerge classToTiny(MappingTree.ClassMapping klass) {
+		ClassMerge merge = new ClassMerge(new ArrayList<>(), new ArrayList<>());
 		String obf = klass.getSrcName();
 		String srg = klass.getDstName(0);
 		MappingTree.ClassMapping classDef = this.src.getClass(obf);
 
 		if (classDef == null) {
 			if (lenient) {
-				return;
+				return merge;
 			} else {
 				throw new MappingException("Missing class: " + obf + " (srg: " + srg + ")");
 			}
@@ -216,10 +255,10 @@ public final class SrgMerger {
 				namespace -> "srg".equals(namespace) ? srg : classDef.getName(namespace)
 		);
 
-		flatOutput.visitClass(obf, classNames.toArray(new String[0]));
+		merge.visits().add(visitor -> visitor.visitClass(obf, classNames.toArray(new String[0])));
 
 		if (classDef.getComment() != null) {
-			flatOutput.visitClassComment(obf, classDef.getComment());
+			merge.visits().add(visitor -> visitor.visitClassComment(obf, classDef.getComment()));
 		}
 
 		for (MappingTree.MethodMapping method : klass.getMethods()) {
@@ -237,18 +276,14 @@ public final class SrgMerger {
 					// This is especially troublesome with methods annotated with @DontObfuscate (e.g. m_129629_)
 					// with environments like yarn where methods with the same srg name may not inherit the same names due to parameter mappings and inheritance
 					// This requires further testing!
-					postProcesses.add(() -> {
+					merge.postVisits().add(visitor -> {
 						if (!methodSrgNames.contains(methodSrgName)) {
 							List<String> methodNames = CollectionUtil.map(
 									output.getDstNamespaces(),
 									namespace -> "srg".equals(namespace) ? methodSrgName : method.getSrcName()
 							);
 
-							try {
-								flatOutput.visitMethod(obf, method.getSrcName(), method.getSrcDesc(), methodNames.toArray(new String[0]));
-							} catch (IOException e) {
-								throw new UncheckedIOException(e);
-							}
+							visitor.visitMethod(obf, method.getSrcName(), method.getSrcDesc(), methodNames.toArray(new String[0]));
 						}
 					});
 				} else {
@@ -258,37 +293,41 @@ public final class SrgMerger {
 				continue;
 			}
 
-			methodToTiny(obf, method, methodSrgName, def);
+			merge.visits().add(visitor -> methodToTiny(visitor, obf, method, methodSrgName, def));
 
 			if (methodSrgName.startsWith("func_") || methodSrgName.startsWith("m_") || legacy) {
 				methodSrgNames.add(methodSrgName);
 			}
 		}
 
-		postProcesses.add(() -> {
-			// TODO: This second iteration seems a bit wasteful.
-			//  Is it possible to just iterate this and leave SRG out?
-			for (MappingTree.MethodMapping def : classDef.getMethods()) {
-				// If obf = some other name: some special name that srg might not contain.
-				// This includes constructors and overridden JDK methods.
-				if (!def.getSrcName().equals(def.getDstName(0))) {
-					continue;
-				}
+		// TODO: This second iteration seems a bit wasteful.
+		//  Is it possible to just iterate this and leave SRG out?
+		List<MappingTree.MethodMapping> methodsMissingSrg = new ArrayList<>();
 
-				MappingTree.MethodMapping method = CollectionUtil.find(
-						klass.getMethods(),
-						m -> m.getSrcName().equals(def.getName("official")) && m.getSrcDesc().equals(def.getDesc("official"))
-				).orElse(null);
+		for (MappingTree.MethodMapping def : classDef.getMethods()) {
+			// If obf = some other name: some special name that srg might not contain.
+			// This includes constructors and overridden JDK methods.
+			if (!def.getSrcName().equals(def.getDstName(0))) {
+				continue;
+			}
 
-				if (method == null) {
-					try {
-						methodToTiny(obf, null, def.getSrcName(), def);
-					} catch (IOException e) {
-						throw new UncheckedIOException(e);
-					}
-				}
+			MappingTree.MethodMapping method = CollectionUtil.find(
+					klass.getMethods(),
+					m -> m.getSrcName().equals(def.getName("official")) && m.getSrcDesc().equals(def.getDesc("official"))
+			).orElse(null);
+
+			if (method == null) {
+				methodsMissingSrg.add(def);
 			}
-		});
+		}
+
+		if (!methodsMissingSrg.isEmpty()) {
+			merge.postVisits().add(visitor -> {
+				for (MappingTree.MethodMapping def : methodsMissingSrg) {
+					methodToTiny(visitor, obf, null, def.getSrcName(), def);
+				}
+			});
+		}
 
 		for (MappingTree.FieldMapping field : klass.getFields()) {
 			MappingTree.FieldMapping def = CollectionUtil.find(
@@ -303,7 +342,7 @@ public final class SrgMerger {
 							namespace -> "srg".equals(namespace) ? field.getDstName(0) : field.getSrcName()
 					);
 
-					flatOutput.visitField(obf, field.getSrcName(), field.getSrcDesc(), fieldNames.toArray(new String[0]));
+					merge.visits().add(visitor -> visitor.visitField(obf, field.getSrcName(), field.getSrcDesc(), fieldNames.toArray(new String[0])));
 				}
 
 				continue;
@@ -314,15 +353,17 @@ public final class SrgMerger {
 					namespace -> "srg".equals(namespace) ? field.getDstName(0) : def.getName(namespace)
 			);
 
-			flatOutput.visitField(obf, def.getName("official"), def.getDesc("official"), fieldNames.toArray(new String[0]));
+			merge.visits().add(visitor -> visitor.visitField(obf, def.getName("official"), def.getDesc("official"), fieldNames.toArray(new String[0])));
 
 			if (def.getComment() != null) {
-				flatOutput.visitFieldComment(obf, def.getName("official"), def.getDesc("official"), def.getComment());
+				merge.visits().add(visitor -> visitor.visitFieldComment(obf, def.getName("official"), def.getDesc("official"), def.getComment()));
 			}
 		}
+
+		return merge;
 	}
 
-	private void methodToTiny(String obfClassName, @Nullable MappingTree.MethodMapping srgMethod, @Nullable String srgMethodName, MappingTree.MethodMapping actualMethod)
+	private void methodToTiny(FlatMappingVisitor visitor, String obfClassName, @Nullable MappingTree.MethodMapping srgMethod, @Nullable String srgMethodName, MappingTree.MethodMapping actualMethod)
 			throws IOException {
 		if (srgMethod != null && srgMethodName != null) {
 			srgMethodName = srgMethod.getDstName(0);
@@ -334,10 +375,10 @@ public final class SrgMerger {
 				namespace -> "srg".equals(namespace) ? finalSrgMethodName : actualMethod.getName(namespace)
 		);
 
-		flatOutput.visitMethod(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), methodNames.toArray(new String[0]));
+		visitor.visitMethod(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), methodNames.toArray(new String[0]));
 
 		if (actualMethod.getComment() != null) {
-			flatOutput.visitMethodComment(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), actualMethod.getComment());
+			visitor.visitMethodComment(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), actualMethod.getComment());
 		}
 
 		for (MappingTree.MethodArgMapping arg : actualMethod.getArgs()) {
@@ -348,10 +389,10 @@ public final class SrgMerger {
 					namespace -> "srg".equals(namespace) ? srgName : arg.getName(namespace)
 			);
 
-			flatOutput.visitMethodArg(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), arg.getArgPosition(), arg.getLvIndex(), arg.getName("official"), argNames.toArray(new String[0]));
+			visitor.visitMethodArg(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), arg.getArgPosition(), arg.getLvIndex(), arg.getName("official"), argNames.toArray(new String[0]));
 
 			if (arg.getComment() != null) {
-				flatOutput.visitMethodArgComment(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), arg.getArgPosition(), arg.getLvIndex(), arg.getName("official"), arg.getComment());
+				visitor.visitMethodArgComment(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), arg.getArgPosition(), arg.getLvIndex(), arg.getName("official"), arg.getComment());
 			}
 		}
 
@@ -363,10 +404,10 @@ public final class SrgMerger {
 					namespace -> "srg".equals(namespace) ? srgName : var.getName(namespace)
 			);
 
-			flatOutput.visitMethodVar(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), var.getLvtRowIndex(), var.getLvIndex(), var.getStartOpIdx(), var.getName("official"), varNames.toArray(new String[0]));
+			visitor.visitMethodVar(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), var.getLvtRowIndex(), var.getLvIndex(), var.getStartOpIdx(), var.getName("official"), varNames.toArray(new String[0]));
 
 			if (var.getComment() != null) {
-				flatOutput.visitMethodVarComment(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), var.getLvtRowIndex(), var.getLvIndex(), var.getStartOpIdx(), var.getName("official"), var.getComment());
+				visitor.visitMethodVarComment(obfClassName, actualMethod.getName("official"), actualMethod.getDesc("official"), var.getLvtRowIndex(), var.getLvIndex(), var.getStartOpIdx(), var.getName("official"), var.getComment());
 			}
 		}
 	}
@@ -407,4 +448,13 @@ public final class SrgMerger {
 			throw exception.get();
 		}
 	}
+
+	/**
+	 * The visits recorded for a single SRG class.
+	 *
+	 * @param visits     the visits to replay into the output tree
+	 * @param postVisits the visits to replay once every class has been visited
+	 */
+	private record ClassMerge(List<IoConsumer<FlatMappingVisitor>> visits, List<IoConsumer<FlatMappingVisitor>> postVisits) {
+	}
 }
@@ -26,48 +26,145 @@ package net.fabricmc.loom.util.srg;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.List;
 
-import org.cadixdev.lorenz.MappingSet;
-import org.cadixdev.lorenz.io.srg.SrgWriter;
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+import net.fabricmc.mappingio.adapter.ForwardingMappingVisitor;
+import net.fabricmc.mappingio.tree.MappingTreeView;
 
-import net.fabricmc.lorenztiny.TinyMappingsReader;
-import net.fabricmc.mappingio.tree.MappingTree;
+/**
+ * Writes SRG mappings between two namespaces while forwarding every visit to another visitor,
+ * so that other mapping files can be produced in the same pass over a mapping tree.
+ *
+ * <p>Lines are written as soon as the names of an element are known, meaning that the
+ * {@code CL}, {@code FD} and {@code MD} lines of a class are grouped together instead of being sorted by kind.
+ * Nothing is buffered, so the output is never held in memory as a whole.
+ */
+public class SrgNamedWriter extends ForwardingMappingVisitor {
+	private final Writer writer;
+	private final MappingTreeView tree;
+	private final String from;
+	private final String to;
+	private final boolean includeIdentityMappings;
+	private int fromId;
+	private int toId;
+	private String srcName;
+	private String srcDesc;
+	private String fromName;
+	private String toName;
+	private String fromClassName;
+	private String toClassName;
 
-public class SrgNamedWriter {
-	public static void writeTo(Path srgFile, MappingTree mappings, String from, String to, boolean includeIdentityMappings) throws IOException {
-		Files.deleteIfExists(srgFile);
+	/**
+	 * Creates a new writer.
+	 *
+	 * @param next                    the visitor receiving all visits
+	 * @param writer                  the writer for the SRG mappings, not closed by this visitor
+	 * @param tree                    the tree being visited, used to remap descriptors
+	 * @param from                    the source namespace of the SRG mappings
+	 * @param to                      the target namespace of the SRG mappings
+	 * @param includeIdentityMappings whether to emit top-level classes that have the same name in both namespaces,
+	 *                                which Legacy Forge's FMLDeobfuscatingRemapper requires
+	 */
+	public SrgNamedWriter(MappingVisitor next, Writer writer, MappingTreeView tree, String from, String to, boolean includeIdentityMappings) {
+		super(next);
 
-		try (SrgWriter writer = newSrgWriter(Files.newBufferedWriter(srgFile), includeIdentityMappings)) {
-			try (TinyMappingsReader reader = new TinyMappingsReader(mappings, from, to)) {
-				writer.write(reader.read());
-			}
+		this.writer = writer;
+		this.tree = tree;
+		this.from = from;
+		this.to = to;
+		this.includeIdentityMappings = includeIdentityMappings;
+	}
+
+	@Override
+	public void visitNamespaces(String srcNamespace, List<String> dstNamespaces) throws IOException {
+		fromId = getNamespaceId(srcNamespace, dstNamespaces, from);
+		toId = getNamespaceId(srcNamespace, dstNamespaces, to);
+		super.visitNamespaces(srcNamespace, dstNamespaces);
+	}
+
+	private static int getNamespaceId(String srcNamespace, List<String> dstNamespaces, String namespace) {
+		if (srcNamespace.equals(namespace)) {
+			return MappingTreeView.SRC_NAMESPACE_ID;
 		}
+
+		int id = dstNamespaces.indexOf(namespace);
+
+		if (id < 0) {
+			throw new MappingException("Mappings do not contain namespace " + namespace);
+		}
+
+		return id;
 	}
 
-	private static SrgWriter newSrgWriter(Writer writer, boolean includeIdentityMappings) {
-		return includeIdentityMappings ? new SrgWithIdentitiesWriter(writer) : new SrgWriter(writer);
+	@Override
+	public boolean visitClass(String srcName) throws IOException {
+		startElement(srcName, null);
+		return super.visitClass(srcName);
 	}
 
-	/**
-	 * Legacy Forge's FMLDeobfuscatingRemapper requires class mappings, even if they are identity maps, but such
-	 * mappings are filtered out by the SrgWriter. To get around that, this SrgWriter manually emits identity mappings
-	 * before emitting all regular mappings.
-	 */
-	private static class SrgWithIdentitiesWriter extends SrgWriter {
-		private SrgWithIdentitiesWriter(Writer writer) {
-			super(writer);
+	@Override
+	public boolean visitField(String srcName, String srcDesc) throws IOException {
+		startElement(srcName, srcDesc);
+		return super.visitField(srcName, srcDesc);
+	}
+
+	@Override
+	public boolean visitMethod(String srcName, String srcDesc) throws IOException {
+		startElement(srcName, srcDesc);
+		return super.visitMethod(srcName, srcDesc);
+	}
+
+	private void startElement(String srcName, String srcDesc) {
+		this.srcName = srcName;
+		this.srcDesc = srcDesc;
+		this.fromName = fromId == MappingTreeView.SRC_NAMESPACE_ID ? srcName : null;
+		this.toName = toId == MappingTreeView.SRC_NAMESPACE_ID ? srcName : null;
+	}
+
+	@Override
+	public void visitDstName(MappedElementKind targetKind, int namespace, String name) throws IOException {
+		if (namespace == fromId) {
+			fromName = name;
 		}
 
-		@Override
-		public void write(MappingSet mappings) {
-			mappings.getTopLevelClassMappings().stream()
-					.filter(cls -> !cls.hasDeobfuscatedName())
-					.sorted(getConfig().getClassMappingComparator())
-					.forEach(cls -> writer.format("CL: %s %s%n", cls.getFullObfuscatedName(), cls.getFullDeobfuscatedName()));
+		if (namespace == toId) {
+			toName = name;
+		}
+
+		super.visitDstName(targetKind, namespace, name);
+	}
+
+	@Override
+	public boolean visitElementContent(MappedElementKind targetKind) throws IOException {
+		// Missing names are treated the same way as identity mappings
+		String fromName = this.fromName != null ? this.fromName : srcName;
+		String toName = this.toName != null ? this.toName : fromName;
 
-			super.write(mappings);
+		switch (targetKind) {
+		case CLASS -> {
+			fromClassName = fromName;
+			toClassName = toName;
+
+			if (!fromName.equals(toName) || (includeIdentityMappings && fromName.indexOf('$') < 0)) {
+				writer.write("CL: " + fromName + " " + toName + "\n");
+			}
+		}
+		case FIELD -> {
+			if (!fromName.equals(toName)) {
+				writer.write("FD: " + fromClassName + "/" + fromName + " " + toClassName + "/" + toName + "\n");
+			}
 		}
+		case METHOD -> {
+			if (!fromName.equals(toName)) {
+				String fromDesc = tree.mapDesc(srcDesc, MappingTreeView.SRC_NAMESPACE_ID, fromId);
+				String toDesc = tree.mapDesc(srcDesc, MappingTreeView.SRC_NAMESPACE_ID, toId);
+				writer.write("MD: " + fromClassName + "/" + fromName + " " + fromDesc + " " + toClassName + "/" + toName + " " + toDesc + "\n");
+			}
+		}
+		}
+
+		return super.visitElementContent(targetKind);
 	}
 }
@@ -0,0 +1,131 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import net.fabricmc.loom.util.CacheStore
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class CacheStoreTest extends Specification {
+    def "lock is reentrant"() {
+        given:
+            def artifact = File.createTempDir().toPath().resolve("test.jar")
+
+        when:
+            def outer = CacheStore.lock(artifact)
+            def inner = CacheStore.lock(artifact)
+            inner.close()
+            def heldAfterInner = outer.state.lock.heldByCurrentThread
+            outer.close()
+
+        then:
+            heldAfterInner
+            lockFromOtherThread(artifact)
+    }
+
+    def "lock is released when the body throws"() {
+        given:
+            def artifact = File.createTempDir().toPath().resolve("test.jar")
+
+        when:
+            def lock = CacheStore.lock(artifact)
+            try {
+                throw new IOException("Failed")
+            } finally {
+                lock.close()
+            }
+
+        then:
+            thrown IOException
+            lockFromOtherThread(artifact)
+    }
+
+    def "publish replaces the artifact"() {
+        given:
+            def artifact = File.createTempDir().toPath().resolve("test.txt")
+            artifact.text = "old"
+
+        when:
+            CacheStore.publish(artifact) { temp ->
+                // Nothing must be visible before the writer completed
+                assert artifact.text == "old"
+                temp.text = "new"
+            }
+
+        then:
+            artifact.text == "new"
+            siblings(artifact) == ["test.txt"]
+    }
+
+    def "failed publish keeps the old artifact"() {
+        given:
+            def artifact = File.createTempDir().toPath().resolve("test.txt")
+            artifact.text = "old"
+
+        when:
+            CacheStore.publish(artifact) { temp ->
+                temp.text = "partial"
+                throw new IOException("Failed")
+            }
+
+        then:
+            thrown IOException
+            artifact.text == "old"
+            siblings(artifact) == ["test.txt"]
+    }
+
+    def "invalidate while the artifact is open"() {
+        given:
+            def artifact = File.createTempDir().toPath().resolve("test.txt")
+            artifact.text = "old"
+
+        when:
+            def input = Files.newInputStream(artifact)
+            CacheStore.invalidate(artifact)
+            def contents = input.withCloseable { new String(it.readAllBytes()) }
+
+        then:
+            // Gone for new readers, while the open stream still reads the old file
+            !Files.exists(artifact)
+            contents == "old"
+    }
+
+    private static boolean lockFromOtherThread(Path artifact) {
+        boolean locked = false
+        def thread = new Thread({
+            CacheStore.lock(artifact).withCloseable { locked = true }
+        })
+        thread.daemon = true
+        thread.start()
+        thread.join(10_000)
+        return locked
+    }
+
+    private static List<String> siblings(Path artifact) {
+        return artifact.parent.toFile().list().sort()
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import net.fabricmc.loom.util.classindex.ClassIndex
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class ClassIndexTest extends Specification {
+    def cleanup() {
+        // The loaded indexes are static, don't leak them into other tests
+        ClassIndex.LOADED_INDEXES.clear()
+        ClassIndex.loadedClasses = 0
+    }
+
+    def "index is read back from the cache"() {
+        given:
+            def dir = File.createTempDir()
+            def jar = createJar(new File(dir, "test.jar"))
+            def cacheDir = new File(dir, "cache").toPath()
+
+        when:
+            def created = ClassIndex.of(jar.toPath(), cacheDir)
+            ClassIndex.LOADED_INDEXES.clear()
+            def cached = ClassIndex.of(jar.toPath(), cacheDir)
+
+        then:
+            cacheDir.toFile().list().toList().findAll { it.endsWith(".classindex") }.size() == 1
+            !cached.is(created)
+            cached.classes.toList() == created.classes.toList()
+            cached.getClassEntry("test/Example").superName() == "java/lang/Object"
+            cached.getClassEntry("test/Example").getField("value", "I") != null
+    }
+
+    def "corrupt cache is rebuilt"() {
+        given:
+            def dir = File.createTempDir()
+            def jar = createJar(new File(dir, "test.jar"))
+            def cacheDir = new File(dir, "cache").toPath()
+            ClassIndex.of(jar.toPath(), cacheDir)
+            def cacheFile = Files.list(cacheDir).withCloseable { it.find { it.fileName.toString().endsWith(".classindex") } }
+            def valid = Files.readAllBytes(cacheFile)
+
+            // Keep the header, but claim far more strings than the file holds
+            def corrupt = ByteBuffer.allocate(12)
+            corrupt.put(valid, 0, 8)
+            corrupt.putInt(Integer.MAX_VALUE)
+            Files.write(cacheFile, corrupt.array())
+            ClassIndex.LOADED_INDEXES.clear()
+
+        when:
+            def index = ClassIndex.of(jar.toPath(), cacheDir)
+
+        then:
+            index.classNames == ["test/Example"] as Set
+            Files.readAllBytes(cacheFile) == valid
+    }
+
+    private static File createJar(File file) {
+        def writer = new ClassWriter(0)
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/Example", null, "java/lang/Object", null)
+        writer.visitField(Opcodes.ACC_PRIVATE, "value", "I", null, null).visitEnd()
+        writer.visitEnd()
+
+        new ZipOutputStream(file.newOutputStream()).withCloseable { out ->
+            out.putNextEntry(new ZipEntry("test/Example.class"))
+            out.write(writer.toByteArray())
+            out.closeEntry()
+        }
+
+        return file
+    }
+}
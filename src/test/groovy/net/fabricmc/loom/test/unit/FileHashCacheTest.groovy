@@ -0,0 +1,120 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import com.google.common.hash.Hashing
+import net.fabricmc.loom.util.FileHashCache
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.FileTime
+
+class FileHashCacheTest extends Specification {
+    def cleanup() {
+        // The cache is static, don't leak entries or the log into other tests
+        FileHashCache.ENTRIES.clear()
+        FileHashCache.log = null
+    }
+
+    def "hash changes with the file"() {
+        given:
+            def file = File.createTempFile("loom-hash-test", ".txt")
+            file.text = "alpha"
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(1_000_000))
+
+        when:
+            def first = FileHashCache.sha1(file)
+            // Same size, so only the modification time tells the contents apart
+            file.text = "bravo"
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(1_000_000))
+            def cached = FileHashCache.sha1(file)
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(2_000_000))
+            def second = FileHashCache.sha1(file)
+
+        then:
+            first == Hashing.sha1().hashBytes("alpha".bytes)
+            cached == first
+            second == Hashing.sha1().hashBytes("bravo".bytes)
+    }
+
+    def "hashes are persisted"() {
+        given:
+            def dir = File.createTempDir()
+            def log = new File(dir, "hashes.bin").toPath()
+            def file = new File(dir, "test.txt")
+            file.text = "persisted"
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(1_000_000))
+
+        when:
+            FileHashCache.setup(log)
+            def hash = FileHashCache.sha256(file)
+
+            // Start over from the log, as another daemon would
+            FileHashCache.ENTRIES.clear()
+            FileHashCache.log = null
+            file.text = "different"
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(1_000_000))
+            FileHashCache.setup(log)
+            def reloaded = FileHashCache.sha256(file)
+
+        then:
+            hash == Hashing.sha256().hashBytes("persisted".bytes)
+            // Only the persisted record can produce the hash of the previous contents
+            reloaded == hash
+    }
+
+    def "corrupt log is replaced"() {
+        given:
+            def dir = File.createTempDir()
+            def log = new File(dir, "hashes.bin").toPath()
+            def file = new File(dir, "test.txt")
+            file.text = "persisted"
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(1_000_000))
+
+        when:
+            FileHashCache.setup(log)
+            def hash = FileHashCache.sha256(file)
+            def validSize = Files.size(log)
+
+            // A record length no record can have, followed by garbage
+            new DataOutputStream(Files.newOutputStream(log, StandardOpenOption.APPEND)).withCloseable {
+                it.writeInt(Integer.MAX_VALUE)
+                it.write(new byte[16])
+            }
+
+            FileHashCache.ENTRIES.clear()
+            FileHashCache.log = null
+            file.text = "different"
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(1_000_000))
+            FileHashCache.setup(log)
+            def reloaded = FileHashCache.sha256(file)
+
+        then:
+            // The records before the corruption are kept, the rest of the log is dropped
+            reloaded == hash
+            Files.size(log) == validSize
+    }
+}
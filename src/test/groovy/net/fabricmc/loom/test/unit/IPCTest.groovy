@@ -62,4 +62,72 @@ class IPCTest extends Specification {
             received[0] == "Test"
             received[1] == "Hello"
     }
+
+    def "batched messages are flushed periodically"() {
+        given:
+            def path = Files.createTempFile("loom", "ipc")
+            Files.deleteIfExists(path)
+
+            def received = Collections.synchronizedList([])
+            def ipcServer = new IPCServer(path, { received << it } as Consumer<String>)
+            def client = new IPCClient(path, 10)
+
+        when:
+            (0..<100).each { client.accept("Message " + it) }
+
+            // Received before the client is closed
+            while (received.size() != 100) { }
+            client.close()
+            ipcServer.close()
+
+        then:
+            received == (0..<100).collect { "Message " + it }
+    }
+
+    def "coalesced messages replace unsent messages with the same key"() {
+        given:
+            def path = Files.createTempFile("loom", "ipc")
+            Files.deleteIfExists(path)
+
+            def received = Collections.synchronizedList([])
+            def ipcServer = new IPCServer(path, { received << it } as Consumer<String>)
+
+        when:
+            // Nothing is flushed before close
+            new IPCClient(path, 60_000).withCloseable { client ->
+                client.acceptCoalesced("progress", "1%")
+                client.accept("Started")
+                client.acceptCoalesced("progress", "50%")
+                client.acceptCoalesced("other", "Other")
+                client.acceptCoalesced("progress", "100%")
+                client.accept("Done")
+            }
+
+            ipcServer.close()
+
+        then:
+            received == ["Started", "Other", "100%", "Done"]
+    }
+
+    def "close returns once the server read every message"() {
+        given:
+            def path = Files.createTempFile("loom", "ipc")
+            Files.deleteIfExists(path)
+
+            def received = Collections.synchronizedList([])
+            def ipcServer = new IPCServer(path, { received << it } as Consumer<String>)
+
+        when:
+            new IPCClient(path, 60_000).withCloseable { client ->
+                (0..<1000).each { client.accept("Message " + it) }
+            }
+
+            // No waiting, the handshake guarantees the messages were consumed
+            def receivedOnClose = new ArrayList<>(received)
+            ipcServer.close()
+
+        then:
+            receivedOnClose.size() == 1000
+            receivedOnClose.last() == "Message 999"
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.fabricmc.loom.test.unit
+
+import dev.architectury.tinyremapper.IMappingProvider
+import net.fabricmc.loom.build.JarRemapper
+import org.gradle.testfixtures.ProjectBuilder
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+class IncrementalRemapTest extends Specification {
+    static final IMappingProvider MAPPINGS = { IMappingProvider.MappingAcceptor acceptor ->
+        acceptor.acceptClass("a/A", "pkg/Base")
+        acceptor.acceptClass("a/B", "pkg/Child")
+        acceptor.acceptMethod(new IMappingProvider.Member("a/A", "m", "()I"), "value")
+    } as IMappingProvider
+
+    def "body only change is remapped incrementally"() {
+        given:
+            def project = ProjectBuilder.builder().build()
+            def dir = Files.createTempDirectory("loom-incremental-remap")
+            def stateDir = dir.resolve("state")
+
+        when:
+            def first = remap(project, writeJar(dir.resolve("input1.jar"), 1, false), dir.resolve("output1.jar"), stateDir)
+            def input = writeJar(dir.resolve("input2.jar"), 2, false)
+            def second = remap(project, input, dir.resolve("output2.jar"), stateDir)
+            remap(project, input, dir.resolve("full.jar"), null)
+
+        then:
+            !first.incremental.isIncremental()
+            second.incremental.isIncremental()
+            second.incremental.getChangedCount() == 1
+            readClasses(dir.resolve("output2.jar")) == readClasses(dir.resolve("full.jar"))
+            readClasses(dir.resolve("output2.jar")).keySet() == ["pkg/Base.class", "pkg/Child.class"] as Set
+    }
+
+    def "shape change forces a full remap"() {
+        given:
+            def project = ProjectBuilder.builder().build()
+            def dir = Files.createTempDirectory("loom-incremental-remap")
+            def stateDir = dir.resolve("state")
+
+        when:
+            remap(project, writeJar(dir.resolve("input1.jar"), 1, false), dir.resolve("output1.jar"), stateDir)
+            def input = writeJar(dir.resolve("input2.jar"), 1, true)
+            def second = remap(project, input, dir.resolve("output2.jar"), stateDir)
+            remap(project, input, dir.resolve("full.jar"), null)
+
+        then:
+            !second.incremental.isIncremental()
+            readClasses(dir.resolve("output2.jar")) == readClasses(dir.resolve("full.jar"))
+    }
+
+    private static JarRemapper.RemapData remap(def project, Path input, Path output, Path stateDir) {
+        def remapper = new JarRemapper()
+        remapper.addMappings(MAPPINGS)
+        def data = remapper.scheduleRemap(input, output)
+
+        if (stateDir != null) {
+            data.incremental(stateDir, "test")
+        }
+
+        remapper.remap(project)
+        return data
+    }
+
+    private static Map<String, List<Byte>> readClasses(Path jar) {
+        def classes = [:]
+
+        new ZipFile(jar.toFile()).withCloseable { zip ->
+            zip.entries().each { entry ->
+                if (entry.name.endsWith(".class")) {
+                    classes[entry.name] = zip.getInputStream(entry).bytes.toList()
+                }
+            }
+        }
+
+        return classes
+    }
+
+    // a/A returns the value from m(), the extra field changes its shape. a/B extends a/A and calls m()
+    private static Path writeJar(Path jar, int value, boolean extraField) {
+        new ZipOutputStream(Files.newOutputStream(jar)).withCloseable { zos ->
+            def a = new ClassWriter(ClassWriter.COMPUTE_MAXS)
+            a.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "a/A", null, "java/lang/Object", null)
+            writeConstructor(a, "java/lang/Object")
+
+            if (extraField) {
+                a.visitField(Opcodes.ACC_PUBLIC, "f", "I", null, null).visitEnd()
+            }
+
+            def m = a.visitMethod(Opcodes.ACC_PUBLIC, "m", "()I", null, null)
+            m.visitCode()
+            m.visitLdcInsn(value)
+            m.visitInsn(Opcodes.IRETURN)
+            m.visitMaxs(0, 0)
+            m.visitEnd()
+            a.visitEnd()
+
+            def b = new ClassWriter(ClassWriter.COMPUTE_MAXS)
+            b.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "a/B", null, "a/A", null)
+            writeConstructor(b, "a/A")
+            def n = b.visitMethod(Opcodes.ACC_PUBLIC, "n", "()I", null, null)
+            n.visitCode()
+            n.visitVarInsn(Opcodes.ALOAD, 0)
+            n.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "a/B", "m", "()I", false)
+            n.visitInsn(Opcodes.IRETURN)
+            n.visitMaxs(0, 0)
+            n.visitEnd()
+            b.visitEnd()
+
+            zos.putNextEntry(new ZipEntry("a/A.class"))
+            zos.write(a.toByteArray())
+            zos.closeEntry()
+            zos.putNextEntry(new ZipEntry("a/B.class"))
+            zos.write(b.toByteArray())
+            zos.closeEntry()
+        }
+
+        return jar
+    }
+
+    private static void writeConstructor(ClassWriter writer, String superName) {
+        def init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null)
+        init.visitCode()
+        init.visitVarInsn(Opcodes.ALOAD, 0)
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false)
+        init.visitInsn(Opcodes.RETURN)
+        init.visitMaxs(0, 0)
+        init.visitEnd()
+    }
+}
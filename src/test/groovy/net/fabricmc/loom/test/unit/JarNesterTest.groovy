@@ -0,0 +1,96 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import net.fabricmc.loom.LoomGradlePlugin
+import net.fabricmc.loom.build.nesting.JarNester
+import net.fabricmc.loom.util.ZipUtils
+import org.gradle.api.logging.Logging
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+
+class JarNesterTest extends Specification {
+    def "nest jars"() {
+        given:
+            def dir = File.createTempDir()
+            def modJar = createMod(dir)
+            def first = createJar(new File(dir, "first.jar"), "first.txt")
+            def second = createJar(new File(dir, "second.jar"), "second.txt")
+
+        when:
+            JarNester.nestJars([first, second], modJar, Logging.getLogger(JarNesterTest))
+            def modJson = LoomGradlePlugin.GSON.fromJson(new String(ZipUtils.unpack(modJar.toPath(), "fabric.mod.json"), StandardCharsets.UTF_8), Map)
+
+        then:
+            modJson.id == "test"
+            modJson.jars*.file == ["META-INF/jars/first.jar", "META-INF/jars/second.jar"]
+            new String(ZipUtils.unpack(modJar.toPath(), "test.txt"), StandardCharsets.UTF_8) == "Kept as it is"
+            ZipUtils.unpack(modJar.toPath(), "META-INF/jars/first.jar") == first.bytes
+            new ZipFile(modJar).withCloseable { it.getEntry("META-INF/jars/second.jar").method } == ZipEntry.STORED
+            // The mod jar was replaced through a temporary file that is gone again
+            dir.list().toList().sort() == ["first.jar", "mod.jar", "second.jar"]
+    }
+
+    def "jars with the same name cannot be nested"() {
+        given:
+            def dir = File.createTempDir()
+            def modJar = createMod(dir)
+            def before = modJar.bytes
+            def first = createJar(new File(dir, "lib.jar"), "first.txt")
+            def otherDir = new File(dir, "other")
+            otherDir.mkdir()
+            def second = createJar(new File(otherDir, "lib.jar"), "second.txt")
+
+        when:
+            JarNester.nestJars([first, second], modJar, Logging.getLogger(JarNesterTest))
+
+        then:
+            def e = thrown(IllegalStateException)
+            e.message == "Cannot nest 2 jars at the same path: META-INF/jars/lib.jar"
+            modJar.bytes == before
+    }
+
+    private static File createMod(File dir) {
+        def content = new File(dir, "mod")
+        content.mkdir()
+        new File(content, "fabric.mod.json").text = '{"schemaVersion": 1, "id": "test"}'
+        new File(content, "test.txt").text = "Kept as it is"
+        def modJar = new File(dir, "mod.jar")
+        ZipUtils.pack(content.toPath(), modJar.toPath())
+        content.deleteDir()
+        return modJar
+    }
+
+    private static File createJar(File jar, String entry) {
+        def content = Files.createTempDirectory("loom-nest-test")
+        Files.writeString(content.resolve(entry), "Nested " + entry)
+        ZipUtils.pack(content, jar.toPath())
+        return jar
+    }
+}
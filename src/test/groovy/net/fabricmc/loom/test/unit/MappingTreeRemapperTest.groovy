@@ -0,0 +1,62 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import net.fabricmc.loom.util.MappingTreeRemapper
+import net.fabricmc.loom.util.classindex.ClassIndex
+import net.fabricmc.mappingio.MappingReader
+import net.fabricmc.mappingio.tree.MemoryMappingTree
+import spock.lang.Specification
+
+class MappingTreeRemapperTest extends Specification {
+    static final String MAPPINGS = """tiny\t2\t0\tintermediary\tnamed
+c\tclass_1\tpkg/Base
+\tm\t()V\tmethod_1\tdoThing
+\tf\tI\tfield_1\tcount
+c\tclass_2\tpkg/Child
+"""
+
+    def "remap through hierarchy"() {
+        given:
+            def tree = new MemoryMappingTree()
+            MappingReader.read(new StringReader(MAPPINGS), tree)
+            def hierarchy = [
+                    class_2: new ClassIndex.ClassEntry("class_2", 0, "class_1", [], [], [], []),
+                    class_1: new ClassIndex.ClassEntry("class_1", 0, "java/lang/Object", [], [], [], [])
+            ]
+
+        when:
+            def remapper = new MappingTreeRemapper(tree, "intermediary", "named", { hierarchy[it] })
+
+        then:
+            remapper.map("class_2") == "pkg/Child"
+            remapper.map("class_3") == "class_3"
+            remapper.mapMethodName("class_1", "method_1", "()V") == "doThing"
+            remapper.mapMethodName("class_2", "method_1", "()V") == "doThing"
+            remapper.mapFieldName("class_2", "field_1", "I") == "count"
+            remapper.mapFieldName("class_2", "field_2", "I") == "field_2"
+            remapper.mapMethodDesc("(Lclass_2;)Lclass_1;") == "(Lpkg/Child;)Lpkg/Base;"
+    }
+}
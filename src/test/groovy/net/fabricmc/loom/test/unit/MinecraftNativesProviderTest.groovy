@@ -0,0 +1,82 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.test.unit
+
+import net.fabricmc.loom.configuration.providers.minecraft.MinecraftNativesProvider
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class MinecraftNativesProviderTest extends Specification {
+    def "unpack natives"() {
+        given:
+            def dir = File.createTempDir().toPath()
+            def jar = createJar(dir.resolve("natives.jar"), [
+                    "liblwjgl.so": "lwjgl",
+                    "linux/x64/libglfw.so": "glfw",
+                    "META-INF/MANIFEST.MF": "Manifest-Version: 1.0",
+                    "META-INF/versions/9/module-info.class": "module"
+            ])
+            def output = dir.resolve("natives")
+
+        when:
+            def files = MinecraftNativesProvider.unpackNatives(jar, output)
+
+        then:
+            files == ["liblwjgl.so", "linux/x64/libglfw.so"]
+            output.resolve("liblwjgl.so").text == "lwjgl"
+            output.resolve("linux/x64/libglfw.so").text == "glfw"
+            Files.notExists(output.resolve("META-INF"))
+    }
+
+    def "entries outside of the natives directory are rejected"() {
+        given:
+            def dir = File.createTempDir().toPath()
+            def jar = createJar(dir.resolve("natives.jar"), ["../escaped.so": "escaped"])
+
+        when:
+            MinecraftNativesProvider.unpackNatives(jar, dir.resolve("natives"))
+
+        then:
+            def e = thrown(IOException)
+            e.message.contains("outside of the natives directory")
+            Files.notExists(dir.resolve("escaped.so"))
+    }
+
+    private static Path createJar(Path jar, Map<String, String> entries) {
+        new ZipOutputStream(Files.newOutputStream(jar)).withCloseable { out ->
+            entries.each { name, content ->
+                out.putNextEntry(new ZipEntry(name))
+                out.write(content.bytes)
+                out.closeEntry()
+            }
+        }
+
+        return jar
+    }
+}
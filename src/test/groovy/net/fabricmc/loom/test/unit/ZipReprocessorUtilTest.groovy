@@ -0,0 +1,112 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2021 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.fabricmc.loom.test.unit
+
+import net.fabricmc.loom.util.ZipReprocessorUtil
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+class ZipReprocessorUtilTest extends Specification {
+    static final long CONSTANT_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).timeInMillis
+
+    @Unroll
+    def "copied zip matches rewritten zip (reproducibleFileOrder: #reproducibleFileOrder, preserveFileTimestamps: #preserveFileTimestamps)"() {
+        given:
+            def dir = Files.createTempDirectory("loom-zip-reprocess")
+            def input = writeZip(dir.resolve("input.zip"))
+            def copied = dir.resolve("copied.zip")
+            def rewritten = dir.resolve("rewritten.zip")
+            Files.copy(input, copied)
+
+        when:
+            ZipReprocessorUtil.reprocessZip(copied.toFile(), reproducibleFileOrder, preserveFileTimestamps)
+            // The fallback used for zips that cannot be copied
+            ZipReprocessorUtil.rewrite(input.toFile(), rewritten, reproducibleFileOrder, preserveFileTimestamps)
+
+            def expected = reproducibleFileOrder ? readEntries(input).sort { it[0] } : readEntries(input)
+            def entries = readEntries(copied)
+
+        then:
+            Files.readAllBytes(copied) == Files.readAllBytes(rewritten)
+            entries.collect { it[0..1] } == expected.collect { it[0..1] }
+            entries.collect { it[2] } == (preserveFileTimestamps ? expected.collect { it[2] } : [CONSTANT_TIME] * expected.size())
+
+        where:
+            reproducibleFileOrder | preserveFileTimestamps
+            true                  | true
+            true                  | false
+            false                 | false
+    }
+
+    private static Path writeZip(Path zip) {
+        new ZipOutputStream(Files.newOutputStream(zip)).withCloseable { zos ->
+            def deflated = new ZipEntry("b/deflated.txt")
+            deflated.setTime(1600000000000L)
+            zos.putNextEntry(deflated)
+            zos.write(("Deflated " * 100).bytes)
+            zos.closeEntry()
+
+            byte[] data = "Stored".bytes
+            def crc = new CRC32()
+            crc.update(data)
+            def stored = new ZipEntry("a/stored.bin")
+            stored.setMethod(ZipEntry.STORED)
+            stored.setSize(data.length)
+            stored.setCompressedSize(data.length)
+            stored.setCrc(crc.value)
+            stored.setTime(1600000000000L)
+            zos.putNextEntry(stored)
+            zos.write(data)
+            zos.closeEntry()
+
+            zos.putNextEntry(new ZipEntry("empty.txt"))
+            zos.closeEntry()
+
+            zos.putNextEntry(new ZipEntry("directory/"))
+            zos.closeEntry()
+
+            zos.putNextEntry(new ZipEntry("n\u00f6n-\u00e4scii/na\u00efve.txt"))
+            zos.write("Non-ASCII name".bytes)
+            zos.closeEntry()
+        }
+
+        return zip
+    }
+
+    // Name, content and modification time of every entry, in order
+    private static List<List<Object>> readEntries(Path zip) {
+        new ZipFile(zip.toFile()).withCloseable { zipFile ->
+            zipFile.entries().collect { [it.name, zipFile.getInputStream(it).bytes.toList(), it.time] }
+        }
+    }
+}